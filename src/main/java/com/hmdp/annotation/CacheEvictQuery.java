@@ -0,0 +1,22 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法执行成功后删除@CacheableQuery写入的缓存，在事务中时等事务提交后再删除
+ * 缓存key = keyPrefix + key(SpEL)，写法与@CacheableQuery一致
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheEvictQuery {
+
+    String keyPrefix();
+
+    // SpEL表达式，可以引用方法参数，为空时只用keyPrefix
+    String key() default "";
+}
@@ -0,0 +1,15 @@
+package com.hmdp.annotation;
+
+/**
+ * 缓存策略，对应CacheClient中的几种查询方式
+ */
+public enum CacheStrategy {
+    // 缓存空值，解决缓存穿透
+    PASS_THROUGH,
+    // 互斥锁 + 单飞，解决缓存击穿
+    MUTEX,
+    // 逻辑过期，过期后返回旧数据并异步重建
+    LOGICAL_EXPIRE,
+    // 概率提前刷新(XFetch)
+    EARLY_REFRESH
+}
@@ -0,0 +1,34 @@
+package com.hmdp.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询方法的返回值通过CacheClient缓存到redis
+ * 缓存key = keyPrefix + key(SpEL)，例如 keyPrefix = "cache:voucher:shop:", key = "#shopId"
+ * 返回值按方法的泛型返回类型反序列化，可以是List<ShopType>这样的集合
+ * 注意：和@Transactional一样基于代理，同一个类内部调用需要通过AopContext.currentProxy()
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableQuery {
+
+    String keyPrefix();
+
+    // SpEL表达式，可以引用方法参数，为空时只用keyPrefix
+    String key() default "";
+
+    CacheStrategy strategy() default CacheStrategy.MUTEX;
+
+    long ttl() default 30L;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+
+    // 是否缓存空值(解决缓存穿透)，为false时查不到数据不写缓存
+    boolean cacheNull() default true;
+}
@@ -0,0 +1,145 @@
+package com.hmdp.aspect;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.annotation.CacheEvictQuery;
+import com.hmdp.annotation.CacheableQuery;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * @CacheableQuery / @CacheEvictQuery 的切面，缓存的读写全部交给CacheClient
+ */
+@Slf4j
+@Aspect
+@Component
+public class CacheQueryAspect {
+
+    private static final ExpressionParser PARSER = new SpelExpressionParser();
+    private static final ParameterNameDiscoverer NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+
+    // 解析好的SpEL表达式，避免每次调用都重新解析
+    private final ConcurrentHashMap<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Around("@annotation(cacheableQuery)")
+    public Object cacheable(ProceedingJoinPoint pjp, CacheableQuery cacheableQuery) throws Throwable {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        // 1.计算缓存key，返回值按泛型返回类型反序列化
+        String keyPrefix = cacheableQuery.keyPrefix();
+        String id = evaluateKey(cacheableQuery.key(), pjp, method);
+        Type type = method.getGenericReturnType();
+        long ttl = cacheableQuery.ttl();
+        // 2.回源就是执行被注解的方法
+        Function<String, Object> dbFallback = ignored -> proceed(pjp);
+
+        // 3.按策略查询
+        try {
+            Object result;
+            switch (cacheableQuery.strategy()) {
+                case PASS_THROUGH:
+                    result = cacheClient.queryWithPassThrough(keyPrefix, id, type, dbFallback, ttl, cacheableQuery.unit());
+                    break;
+                case LOGICAL_EXPIRE:
+                    result = cacheClient.queryWithLogicalExpire(keyPrefix, id, type, dbFallback, ttl, cacheableQuery.unit());
+                    if (result == null) {
+                        // 没有预热过，先互斥加载一次；下次读到时不是逻辑过期格式，会异步重建为逻辑过期格式
+                        result = cacheClient.queryWithMutex(keyPrefix, id, type, dbFallback, ttl, cacheableQuery.unit());
+                    }
+                    break;
+                case EARLY_REFRESH:
+                    result = cacheClient.queryWithEarlyRefresh(keyPrefix, id, type, dbFallback, ttl, cacheableQuery.unit());
+                    break;
+                case MUTEX:
+                default:
+                    result = cacheClient.queryWithMutex(keyPrefix, id, type, dbFallback, ttl, cacheableQuery.unit());
+                    break;
+            }
+            // 4.不缓存空值时，把刚写入的空值删掉
+            if (result == null && !cacheableQuery.cacheNull()) {
+                cacheClient.evict(keyPrefix + id);
+            }
+            return result;
+        } catch (ProceedException e) {
+            // 被注解的方法抛出的受检异常原样抛出
+            throw e.getCause();
+        }
+    }
+
+    @Around("@annotation(cacheEvictQuery)")
+    public Object evict(ProceedingJoinPoint pjp, CacheEvictQuery cacheEvictQuery) throws Throwable {
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        String key = cacheEvictQuery.keyPrefix() + evaluateKey(cacheEvictQuery.key(), pjp, method);
+        // 1.先执行方法，失败了不删除缓存
+        Object result = pjp.proceed();
+        // 2.在事务中，提交后再删除，避免提交前被其他请求用旧数据重建
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictQuietly(key);
+                }
+            });
+        } else {
+            evictQuietly(key);
+        }
+        return result;
+    }
+
+    private void evictQuietly(String key) {
+        try {
+            cacheClient.evict(key);
+        } catch (Exception e) {
+            // 数据已经写成功了，删除缓存失败只记录日志，等缓存过期
+            log.error("删除缓存失败, key={}", key, e);
+        }
+    }
+
+    private String evaluateKey(String spel, ProceedingJoinPoint pjp, Method method) {
+        if (StrUtil.isBlank(spel)) {
+            return "";
+        }
+        Expression expression = expressions.computeIfAbsent(spel, PARSER::parseExpression);
+        MethodBasedEvaluationContext context =
+                new MethodBasedEvaluationContext(pjp.getTarget(), method, pjp.getArgs(), NAME_DISCOVERER);
+        Object value = expression.getValue(context);
+        return value == null ? "" : value.toString();
+    }
+
+    private static Object proceed(ProceedingJoinPoint pjp) {
+        try {
+            return pjp.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new ProceedException(e);
+        }
+    }
+
+    // 把受检异常带出Function，在切面里还原
+    private static class ProceedException extends RuntimeException {
+        private ProceedException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
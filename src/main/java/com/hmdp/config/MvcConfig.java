@@ -1,8 +1,18 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.CacheEvictBus;
+import com.hmdp.utils.CacheMetrics;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.ResponseCacheFilter;
+import com.hmdp.utils.ShopViewCounter;
+import com.hmdp.utils.ShopViewFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -25,13 +35,42 @@ public class MvcConfig implements WebMvcConfigurer {
 
         registry.addInterceptor(new LoginInterceptor(stringRedisTemplate))
                 .excludePathPatterns(
-                        "/shop/**",
+                        // 店铺只放行公开的查询接口，新增、修改、批量导入需要登录
+                        "/shop/{id:\\d+}",
+                        "/shop/{id:\\d+}/fields",
+                        "/shop/of/**",
+                        "/shop/filter",
+                        "/shop/suggest",
                         "/voucher/**",
-                        "/shop-type/**",
+                        "/shop-type/list",
                         "/upload/**",
                         "/blog/hot",
+                        "/blog/hot/scroll",
                         "/user/code",
                         "/user/login"
                 ).order(1);
     }
+
+    // 公开GET接口的响应缓存，在拦截器之前执行，命中时不进入DispatcherServlet
+    @Bean
+    @ConditionalOnProperty(name = "hmdp.response-cache.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<ResponseCacheFilter> responseCacheFilter(
+            CacheEvictBus cacheEvictBus, CacheMetrics cacheMetrics,
+            @Value("${hmdp.response-cache.ttl-ms:10000}") long ttlMillis,
+            @Value("${hmdp.response-cache.max-entries:10000}") int maxEntries) {
+        FilterRegistrationBean<ResponseCacheFilter> registration =
+                new FilterRegistrationBean<>(new ResponseCacheFilter(cacheEvictBus, cacheMetrics, ttlMillis, maxEntries));
+        registration.addUrlPatterns("/shop/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 100);
+        return registration;
+    }
+
+    // 店铺详情的浏览统计，排在响应缓存前面，命中响应缓存的请求也要统计
+    @Bean
+    public FilterRegistrationBean<ShopViewFilter> shopViewFilter(ShopViewCounter shopViewCounter) {
+        FilterRegistrationBean<ShopViewFilter> registration = new FilterRegistrationBean<>(new ShopViewFilter(shopViewCounter));
+        registration.addUrlPatterns("/shop/*");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 50);
+        return registration;
+    }
 }
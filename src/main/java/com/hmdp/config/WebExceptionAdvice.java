@@ -1,6 +1,7 @@
 package com.hmdp.config;
 
 import com.hmdp.dto.Result;
+import com.hmdp.utils.DbBusyException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -14,4 +15,11 @@ public class WebExceptionAdvice {
         log.error(e.toString(), e);
         return Result.fail("服务器异常");
     }
+
+    @ExceptionHandler(DbBusyException.class)
+    public Result handleDbBusyException(DbBusyException e) {
+        // 数据库饱和或熔断，快速失败
+        log.warn(e.getMessage());
+        return Result.fail("服务繁忙，请稍后再试");
+    }
 }
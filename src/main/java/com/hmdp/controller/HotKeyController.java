@@ -0,0 +1,32 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.HotKeyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 热点key前端控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/hot-key")
+public class HotKeyController {
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 查询当前全局热点key
+     * @return 最近一个窗口内访问次数最多的前K个key，promoted表示已晋升为热点
+     */
+    @GetMapping("/top")
+    public Result queryTopKeys() {
+        return Result.ok(hotKeyDetector.getTopKeys());
+    }
+}
@@ -1,15 +1,17 @@
 package com.hmdp.controller;
 
 
-import cn.hutool.core.util.StrUtil;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilterDTO;
 import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopImportService;
 import com.hmdp.service.IShopService;
-import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * <p>
@@ -26,6 +28,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private IShopImportService shopImportService;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -36,6 +41,17 @@ public class ShopController {
         return shopService.queryById(id);
     }
 
+    /**
+     * 按需查询商铺的部分字段，例如列表页只需要 name,sold,score
+     * @param id 商铺id
+     * @param fields 需要的字段，逗号分隔
+     * @return 只包含这些字段的商铺数据
+     */
+    @GetMapping("/{id}/fields")
+    public Result queryShopFields(@PathVariable("id") Long id, @RequestParam("fields") List<String> fields) {
+        return shopService.queryShopFields(id, fields);
+    }
+
     /**
      * 新增商铺信息
      * @param shop 商铺数据
@@ -43,10 +59,33 @@ public class ShopController {
      */
     @PostMapping
     public Result saveShop(@RequestBody Shop shop) {
-        // 写入数据库
-        shopService.save(shop);
-        // 返回店铺id
-        return Result.ok(shop.getId());
+        // 写入数据库，并加入GEO集合
+        return shopService.saveShop(shop);
+    }
+
+    /**
+     * 批量导入商铺，请求体就是文件内容，边读边写入，不会整个读进内存
+     * @param format csv(第一行是表头，列名和商铺的字段名一致) / ndjson(每行一个JSON对象)
+     * @param taskId 任务id，可选，导入过程中可以用它查询进度
+     * @return 读取、成功、失败的行数
+     */
+    @PostMapping("/import")
+    public Result importShops(
+            HttpServletRequest request,
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "taskId", required = false) String taskId
+    ) throws IOException {
+        return shopImportService.importShops(request.getInputStream(), format, taskId);
+    }
+
+    /**
+     * 查询批量导入的进度和逐行错误
+     * @param taskId 任务id
+     * @return 进度和前100条错误
+     */
+    @GetMapping("/import/{taskId}")
+    public Result queryImport(@PathVariable("taskId") String taskId) {
+        return shopImportService.queryImport(taskId);
     }
 
     /**
@@ -64,19 +103,44 @@ public class ShopController {
      * 根据商铺类型分页查询商铺信息
      * @param typeId 商铺类型
      * @param current 页码
+     * @param x 经度，可选，和y一起传时按距离排序
+     * @param y 纬度
+     * @param sortBy 排序字段，可选，sold / score / comments，不传坐标时按该字段由高到低排序
      * @return 商铺列表
      */
     @GetMapping("/of/type")
     public Result queryShopByType(
             @RequestParam("typeId") Integer typeId,
-            @RequestParam(value = "current", defaultValue = "1") Integer current
+            @RequestParam(value = "current", defaultValue = "1") Integer current,
+            @RequestParam(value = "x", required = false) Double x,
+            @RequestParam(value = "y", required = false) Double y,
+            @RequestParam(value = "sortBy", required = false) String sortBy
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .eq("type_id", typeId)
-                .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByType(typeId, current, x, y, sortBy);
+    }
+
+    /**
+     * 分类页多条件筛选：类型、商圈、均价区间、最低评分、是否营业中，可按销量、评分、均价、距离排序
+     * @param filter 筛选条件，没有传的条件不参与筛选
+     * @return 商铺列表
+     */
+    @GetMapping("/filter")
+    public Result queryShopByFilter(ShopFilterDTO filter) {
+        return shopService.queryShopByFilter(filter);
+    }
+
+    /**
+     * 根据商铺类型游标翻页查询商铺信息，页数很深时也不会变慢
+     * @param typeId 商铺类型
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/type/scroll")
+    public Result queryShopByTypeScroll(
+            @RequestParam("typeId") Integer typeId,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByTypeScroll(typeId, cursor);
     }
 
     /**
@@ -90,11 +154,34 @@ public class ShopController {
             @RequestParam(value = "name", required = false) String name,
             @RequestParam(value = "current", defaultValue = "1") Integer current
     ) {
-        // 根据类型分页查询
-        Page<Shop> page = shopService.query()
-                .like(StrUtil.isNotBlank(name), "name", name)
-                .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
-        // 返回数据
-        return Result.ok(page.getRecords());
+        return shopService.queryShopByName(name, current);
+    }
+
+    /**
+     * 根据商铺名称关键字游标翻页查询商铺信息，页数很深时也不会变慢
+     * @param name 商铺名称关键字
+     * @param cursor 上一页返回的游标，第一页不传
+     * @return 商铺列表和下一页的游标
+     */
+    @GetMapping("/of/name/scroll")
+    public Result queryShopByNameScroll(
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "cursor", required = false) String cursor
+    ) {
+        return shopService.queryShopByNameScroll(name, cursor);
+    }
+
+    /**
+     * 店铺名称联想，支持拼音首字母，例如 "茶" 或 "cct"
+     * @param prefix 已输入的前缀
+     * @param limit 最多返回几个
+     * @return 店铺id和名称
+     */
+    @GetMapping("/suggest")
+    public Result suggest(
+            @RequestParam("prefix") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit
+    ) {
+        return shopService.suggest(prefix, limit);
     }
 }
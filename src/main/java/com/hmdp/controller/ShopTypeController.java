@@ -4,12 +4,19 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.ShopTypeSnapshot;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,10 +32,50 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询所有店铺类型，直接写出本地快照里序列化好的响应，带ETag，内容没变返回304
+     * @return 按sort排序的店铺类型
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
-//        List<ShopType> typeList = typeService
-//                .query().orderByAsc("sort").list();
-        return typeService.queryTypeList();
+    public ResponseEntity<?> queryTypeList() {
+        ShopTypeSnapshot.Snapshot snapshot = typeService.currentSnapshot();
+        if (snapshot != null) {
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .eTag(snapshot.getEtag())
+                    .body(snapshot.getBody());
+        }
+        // 快照还没有加载成功，走redis缓存
+        return ResponseEntity.ok(typeService.queryTypeList());
+    }
+
+    /**
+     * 新增店铺类型
+     * @param shopType 店铺类型
+     * @return 店铺类型id
+     */
+    @PostMapping
+    public Result saveShopType(@RequestBody ShopType shopType) {
+        return typeService.saveShopType(shopType);
+    }
+
+    /**
+     * 修改店铺类型
+     * @param shopType 店铺类型，id必填
+     * @return 无
+     */
+    @PutMapping
+    public Result updateShopType(@RequestBody ShopType shopType) {
+        return typeService.updateShopType(shopType);
+    }
+
+    /**
+     * 删除店铺类型
+     * @param id 店铺类型id
+     * @return 无
+     */
+    @DeleteMapping("/{id}")
+    public Result deleteShopType(@PathVariable("id") Long id) {
+        return typeService.deleteShopType(id);
     }
 }
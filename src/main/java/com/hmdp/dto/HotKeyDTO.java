@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotKeyDTO {
+    private String key;
+    // 最近一个窗口内所有节点的访问次数(估计值)
+    private Long count;
+    // 是否已晋升为热点key
+    private Boolean promoted;
+}
@@ -9,4 +9,6 @@ public class ScrollResult {
     private List<?> list;
     private Long minTime;
     private Integer offset;
+    // 下一页的游标，为空表示没有下一页
+    private String cursor;
 }
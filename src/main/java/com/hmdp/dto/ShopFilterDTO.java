@@ -0,0 +1,28 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 店铺多条件筛选，没有传的条件不参与筛选
+ */
+@Data
+public class ShopFilterDTO {
+    // 店铺类型
+    private Long typeId;
+    // 商圈
+    private String area;
+    // 均价区间
+    private Long minPrice;
+    private Long maxPrice;
+    // 最低评分，和tb_shop一样是评分乘以10，例如 45 表示4.5分
+    private Integer minScore;
+    // 只要营业中的
+    private Boolean openNow;
+    // 排序：sold(销量) / score(评分，默认) / price(均价由低到高) / distance(距离，需要坐标)
+    private String sortBy;
+    // 当前坐标
+    private Double x;
+    private Double y;
+    // 页码
+    private Integer current = 1;
+}
@@ -4,12 +4,14 @@ import com.baomidou.mybatisplus.annotation.IdType;
 import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
+import com.hmdp.utils.Versioned;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.experimental.Accessors;
 
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * <p>
@@ -23,7 +25,7 @@ import java.time.LocalDateTime;
 @EqualsAndHashCode(callSuper = false)
 @Accessors(chain = true)
 @TableName("tb_shop")
-public class Shop implements Serializable {
+public class Shop implements Serializable, Versioned {
 
     private static final long serialVersionUID = 1L;
 
@@ -106,4 +108,12 @@ public class Shop implements Serializable {
 
     @TableField(exist = false)
     private Double distance;
+
+    /**
+     * 缓存版本号：更新时间的毫秒值(tb_shop.update_time精确到秒)
+     */
+    @Override
+    public long cacheVersion() {
+        return updateTime == null ? 0L : updateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 }
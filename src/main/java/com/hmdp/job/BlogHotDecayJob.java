@@ -0,0 +1,85 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.BlogHotRank;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 热门博文的衰减和构建
+ * 1.已经构建过：推进基准时间、整体缩放分数并裁剪到固定篇数
+ * 2.还没有构建过(首次启动、redis被清空)：按id倒序keyset分页扫描最近一段时间发布的博文写入临时key，扫完后RENAME替换；
+ *   id和发布时间同序，扫到窗口之外就停止，不扫全表
+ */
+@Slf4j
+@Component
+public class BlogHotDecayJob {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private BlogHotRank blogHotRank;
+
+    // 构建时只看最近多少天发布的博文，更早的热度已经衰减得可以忽略
+    @Value("${hmdp.blog.hot.window-days:7}")
+    private int windowDays;
+
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${hmdp.blog.hot.decay-ms:3600000}")
+    public void run() {
+        try {
+            if (blogHotRank.built()) {
+                blogHotRank.decay();
+            } else {
+                rebuild();
+            }
+        } catch (Exception e) {
+            log.error("热门博文衰减/构建失败，下次重试", e);
+        }
+    }
+
+    private void rebuild() {
+        long begin = System.currentTimeMillis();
+        long epochSeconds = begin / 1000;
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(windowDays);
+        long count = 0;
+        try {
+            Long lastId = null;
+            while (true) {
+                List<Blog> blogs = blogService.query()
+                        .select("id", "liked", "comments", "create_time")
+                        .lt(lastId != null, "id", lastId)
+                        .orderByDesc("id")
+                        .last("LIMIT " + BATCH_SIZE)
+                        .list();
+                List<Blog> recent = blogs.stream()
+                        .filter(b -> b.getCreateTime() != null && b.getCreateTime().isAfter(cutoff))
+                        .collect(Collectors.toList());
+                if (!recent.isEmpty()) {
+                    blogHotRank.stage(recent, epochSeconds);
+                    count += recent.size();
+                }
+                // 这一批里已经没有窗口内的博文，或者扫到头了
+                if (recent.isEmpty() || blogs.size() < BATCH_SIZE) {
+                    break;
+                }
+                lastId = blogs.get(blogs.size() - 1).getId();
+            }
+            blogHotRank.commit(epochSeconds);
+            log.info("热门博文构建完成，共{}篇，耗时{}ms", count, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            blogHotRank.abort();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.hmdp.job;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 缓存预热进度，加入就绪探针(readiness)分组：预热达到配置比例前返回DOWN，负载均衡不会把流量转过来
+ */
+@Component
+public class CacheWarmUpHealthIndicator implements HealthIndicator {
+
+    private final ObjectProvider<CacheWarmUpRunner> warmUpRunner;
+
+    public CacheWarmUpHealthIndicator(ObjectProvider<CacheWarmUpRunner> warmUpRunner) {
+        this.warmUpRunner = warmUpRunner;
+    }
+
+    @Override
+    public Health health() {
+        CacheWarmUpRunner runner = warmUpRunner.getIfAvailable();
+        if (runner == null) {
+            // 没有开启预热
+            return Health.up().build();
+        }
+        Health.Builder builder = runner.isReady() ? Health.up() : Health.down();
+        return builder.withDetail("progress", runner.progress()).build();
+    }
+}
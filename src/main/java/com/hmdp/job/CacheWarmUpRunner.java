@@ -0,0 +1,287 @@
+package com.hmdp.job;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShopBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时缓存预热
+ * 按id区间切分，每个区间用keyset分页(WHERE id > ? ORDER BY id LIMIT n)扫描 tb_shop、tb_shop_type 和进行中的秒杀券，
+ * 通过pipeline批量写入redis，并行度由固定大小的线程池控制；
+ * 预热进度达到配置的比例之前，就绪探针保持DOWN，新部署或者redis被清空后第一波请求不会直接打到MySQL
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.warm-up.enabled", havingValue = "true", matchIfMissing = true)
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Value("${hmdp.warm-up.batch-size:500}")
+    private int batchSize;
+
+    @Value("${hmdp.warm-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${hmdp.warm-up.ready-fraction:0.9}")
+    private double readyFraction;
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong done = new AtomicLong();
+    private volatile boolean finished = false;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // 异步预热，不阻塞启动；预热期间由就绪探针挡住流量
+        Thread thread = new Thread(this::warmUp, "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void warmUp() {
+        long begin = System.currentTimeMillis();
+        finished = false;
+        total.set(0);
+        done.set(0);
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<TableScan<?>> scans = Arrays.asList(shopScan(), shopTypeScan(), seckillStockScan());
+            // 1.统计总行数，用于计算预热进度
+            for (TableScan<?> scan : scans) {
+                total.addAndGet(scan.count());
+            }
+            // 2.每张表按id区间切分，各区间独立做keyset分页，并行执行
+            List<Future<?>> futures = new ArrayList<>();
+            for (TableScan<?> scan : scans) {
+                for (long[] range : scan.split(parallelism)) {
+                    futures.add(pool.submit(() -> {
+                        try {
+                            scan.scan(range[0], range[1]);
+                        } catch (RuntimeException e) {
+                            scan.failed = true;
+                            throw e;
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    log.error("缓存预热失败", e);
+                }
+            }
+            // 3.需要整表写入的(店铺类型列表)最后统一写
+            for (TableScan<?> scan : scans) {
+                scan.finish();
+            }
+        } catch (Exception e) {
+            log.error("缓存预热失败", e);
+        } finally {
+            pool.shutdown();
+            // 预热失败也放行流量，只是退化为按需加载
+            finished = true;
+            log.info("缓存预热结束，共{}条，已预热{}条，耗时{}ms", total.get(), done.get(), System.currentTimeMillis() - begin);
+        }
+    }
+
+    /**
+     * 预热进度，0~1
+     */
+    public double progress() {
+        long t = total.get();
+        return t == 0 ? (finished ? 1.0 : 0.0) : Math.min(1.0, (double) done.get() / t);
+    }
+
+    /**
+     * 预热结束或者进度达到配置的比例即可接收流量
+     */
+    public boolean isReady() {
+        return finished || progress() >= readyFraction;
+    }
+
+    // 店铺：逻辑过期，批量写入时过期时间错开
+    private TableScan<Shop> shopScan() {
+        TableScan<Shop> scan = new TableScan<>("tb_shop", shopService, "id", Shop::getId, w -> {
+        }, shops -> {
+            Map<String, Shop> values = new LinkedHashMap<>(shops.size() * 2);
+            for (Shop shop : shops) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setWithLogicalExpireBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            // 同时加入按类型划分的GEO集合和布隆过滤器
+            shopService.addShopGeo(shops);
+            List<Long> ids = new ArrayList<>(shops.size());
+            shops.forEach(shop -> ids.add(shop.getId()));
+            shopBloomFilter.addAll(ids);
+        });
+        // 所有区间都扫描成功，布隆过滤器里有全部店铺了，才开始拦截
+        scan.finisher = () -> {
+            if (!scan.failed) {
+                shopBloomFilter.markReady();
+            }
+        };
+        return scan;
+    }
+
+    // 店铺类型：表很小，整表收集后按sort排序写入一个key
+    private TableScan<ShopType> shopTypeScan() {
+        List<ShopType> types = new ArrayList<>();
+        TableScan<ShopType> scan = new TableScan<>("tb_shop_type", shopTypeService, "id", ShopType::getId, w -> {
+        }, page -> {
+            synchronized (types) {
+                types.addAll(page);
+            }
+        });
+        scan.finisher = () -> {
+            if (types.isEmpty()) {
+                return;
+            }
+            types.sort(Comparator.comparing(ShopType::getSort, Comparator.nullsLast(Comparator.naturalOrder())));
+            cacheClient.set(CACHE_SHOP_TYPE_KEY, types, CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        };
+        return scan;
+    }
+
+    // 进行中的秒杀券：库存写入redis，已存在的不覆盖(redis里的库存才是秒杀时的准确值)
+    private TableScan<SeckillVoucher> seckillStockScan() {
+        return new TableScan<>("tb_seckill_voucher", seckillVoucherService, "voucher_id", SeckillVoucher::getVoucherId,
+                w -> w.gt("end_time", LocalDateTime.now()),
+                vouchers -> stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (SeckillVoucher voucher : vouchers) {
+                        conn.setNX(SECKILL_STOCK_KEY + voucher.getVoucherId(), String.valueOf(voucher.getStock()));
+                    }
+                    return null;
+                }));
+    }
+
+    private class TableScan<T> {
+        private final String table;
+        private final IService<T> service;
+        private final String idColumn;
+        private final Function<T, Long> idGetter;
+        private final Consumer<QueryWrapper<T>> filter;
+        private final Consumer<List<T>> sink;
+        private Runnable finisher;
+        private volatile boolean failed;
+
+        private TableScan(String table, IService<T> service, String idColumn, Function<T, Long> idGetter,
+                          Consumer<QueryWrapper<T>> filter, Consumer<List<T>> sink) {
+            this.table = table;
+            this.service = service;
+            this.idColumn = idColumn;
+            this.idGetter = idGetter;
+            this.filter = filter;
+            this.sink = sink;
+        }
+
+        private QueryWrapper<T> wrapper() {
+            QueryWrapper<T> wrapper = new QueryWrapper<>();
+            filter.accept(wrapper);
+            return wrapper;
+        }
+
+        private long count() {
+            return service.count(wrapper());
+        }
+
+        // 按id的最小值和最大值切成若干区间
+        private List<long[]> split(int parts) {
+            List<long[]> ranges = new ArrayList<>();
+            Map<String, Object> bounds = service.getMap(
+                    wrapper().select("MIN(" + idColumn + ") AS min_id", "MAX(" + idColumn + ") AS max_id"));
+            if (bounds == null || bounds.get("min_id") == null) {
+                return ranges;
+            }
+            long min = ((Number) bounds.get("min_id")).longValue();
+            long max = ((Number) bounds.get("max_id")).longValue();
+            long step = Math.max(1L, (max - min + parts) / parts);
+            for (long from = min; from <= max; from += step) {
+                ranges.add(new long[]{from, Math.min(max, from + step - 1)});
+            }
+            return ranges;
+        }
+
+        // keyset分页扫描 [from, to]
+        private void scan(long from, long to) {
+            long lastId = from - 1;
+            while (true) {
+                List<T> page = service.list(wrapper()
+                        .gt(idColumn, lastId)
+                        .le(idColumn, to)
+                        .orderByAsc(idColumn)
+                        .last("LIMIT " + batchSize));
+                if (page.isEmpty()) {
+                    return;
+                }
+                sink.accept(page);
+                done.addAndGet(page.size());
+                lastId = idGetter.apply(page.get(page.size() - 1));
+                if (page.size() < batchSize) {
+                    return;
+                }
+            }
+        }
+
+        private void finish() {
+            if (finisher != null) {
+                try {
+                    finisher.run();
+                } catch (Exception e) {
+                    log.error("缓存预热失败, table={}", table, e);
+                }
+            }
+        }
+    }
+}
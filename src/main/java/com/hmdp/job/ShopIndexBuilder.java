@@ -0,0 +1,124 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopSuggestTrie;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 店铺名称搜索索引、联想前缀树和多条件筛选的店铺目录的构建
+ * 1.启动后在后台线程里用keyset分页读出所有店铺，构建完成前搜索、筛选走数据库，联想返回空
+ * 2.搜索索引和店铺目录：本节点的新增、修改由ShopServiceImpl直接更新；其他节点的修改由定时任务按 update_time 增量同步
+ * 3.联想前缀树：排名依赖销量，定时在后台整体重建后替换
+ */
+@Slf4j
+@Component
+public class ShopIndexBuilder implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 1000;
+    // 搜索索引、联想前缀树和店铺目录用到的列
+    private static final String[] COLUMNS = {
+            "id", "name", "type_id", "area", "avg_price", "score", "sold", "x", "y", "open_hours"};
+    // 增量同步时往前多看一段时间，防止边界上的更新(数据库时间只精确到秒)和节点间时钟误差漏掉
+    private static final long SYNC_OVERLAP_SECONDS = 5L;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private ShopSuggestTrie shopSuggestTrie;
+
+    @Resource
+    private ShopCatalog shopCatalog;
+
+    private volatile LocalDateTime lastSync;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Thread thread = new Thread(this::build, "shop-index-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void build() {
+        long begin = System.currentTimeMillis();
+        try {
+            // 先记下开始时间，构建期间的修改由下一次增量同步补上
+            LocalDateTime start = LocalDateTime.now();
+            List<Shop> shops = loadAll();
+            shopNameIndex.build(shops);
+            shopCatalog.build(shops);
+            lastSync = start;
+            shopSuggestTrie.build(shops);
+            log.info("店铺搜索索引构建完成，共{}个店铺，耗时{}ms", shops.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("店铺搜索索引构建失败，搜索继续走数据库", e);
+        }
+    }
+
+    // 定时同步其他节点的修改
+    @Scheduled(fixedDelayString = "${hmdp.search.sync-interval-ms:30000}")
+    public void sync() {
+        LocalDateTime since = lastSync;
+        if (since == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Shop> shops = shopService.query()
+                .select(COLUMNS)
+                .ge("update_time", since.minusSeconds(SYNC_OVERLAP_SECONDS))
+                .list();
+        for (Shop shop : shops) {
+            shopNameIndex.upsert(shop);
+            shopCatalog.upsert(shop);
+        }
+        lastSync = now;
+    }
+
+    // 定时重建联想前缀树
+    @Scheduled(initialDelayString = "${hmdp.search.suggest-rebuild-ms:600000}",
+            fixedDelayString = "${hmdp.search.suggest-rebuild-ms:600000}")
+    public void rebuildSuggest() {
+        long begin = System.currentTimeMillis();
+        try {
+            List<Shop> shops = loadAll();
+            shopSuggestTrie.build(shops);
+            log.debug("店铺联想前缀树重建完成，共{}个店铺，耗时{}ms", shops.size(), System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            log.error("店铺联想前缀树重建失败，继续使用旧的", e);
+        }
+    }
+
+    // keyset分页读出所有店铺的搜索字段
+    private List<Shop> loadAll() {
+        List<Shop> all = new ArrayList<>();
+        long lastId = 0L;
+        while (true) {
+            List<Shop> shops = shopService.query()
+                    .select(COLUMNS)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + BATCH_SIZE)
+                    .list();
+            all.addAll(shops);
+            if (shops.size() < BATCH_SIZE) {
+                return all;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+    }
+}
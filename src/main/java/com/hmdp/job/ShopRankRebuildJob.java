@@ -0,0 +1,85 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.ShopLeaderboard;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.LOCK_SHOP_RANK_REBUILD_KEY;
+
+/**
+ * 店铺排行榜全量重建
+ * 启动后和之后每隔一段时间，用keyset分页流式扫描 tb_shop，每批写入临时key，全部扫完后RENAME替换正式的排行榜；
+ * 内存中只有一批数据，扫描期间查询继续使用旧的排行榜；
+ * 临时key是所有节点共用的，用分布式锁保证同一时刻只有一个节点在重建，拿不到锁的节点跳过这一轮
+ */
+@Slf4j
+@Component
+public class ShopRankRebuildJob {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private ShopLeaderboard shopLeaderboard;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Scheduled(initialDelay = 10000, fixedDelayString = "${hmdp.rank.rebuild-ms:3600000}")
+    public void rebuild() {
+        // 0.其他节点正在重建，跳过(看门狗在重建期间自动续期)
+        RLock lock = redissonClient.getLock(LOCK_SHOP_RANK_REBUILD_KEY);
+        if (!lock.tryLock()) {
+            log.debug("其他节点正在重建店铺排行榜，跳过");
+            return;
+        }
+        try {
+            doRebuild();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doRebuild() {
+        long begin = System.currentTimeMillis();
+        // 1.先把内存中的计数增量写回数据库，扫描读到的才是最新值
+        shopService.flushShopCounters();
+        long count = 0;
+        try {
+            // 2.keyset分页扫描，每批写入临时key
+            long lastId = 0L;
+            while (true) {
+                List<Shop> shops = shopService.query()
+                        .select("id", "type_id", "sold", "score", "comments")
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("LIMIT " + BATCH_SIZE)
+                        .list();
+                if (!shops.isEmpty()) {
+                    shopLeaderboard.stage(shops);
+                    count += shops.size();
+                }
+                if (shops.size() < BATCH_SIZE) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+            // 3.替换正式的排行榜
+            shopLeaderboard.commit();
+            log.info("店铺排行榜重建完成，共{}个店铺，耗时{}ms", count, System.currentTimeMillis() - begin);
+        } catch (Exception e) {
+            shopLeaderboard.abort();
+            log.error("店铺排行榜重建失败，继续使用旧的排行榜", e);
+        }
+    }
+}
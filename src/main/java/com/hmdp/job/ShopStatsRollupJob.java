@@ -0,0 +1,131 @@
+package com.hmdp.job;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopStats;
+import com.hmdp.mapper.ShopMapper;
+import com.hmdp.mapper.ShopStatsMapper;
+import com.hmdp.utils.ShopViewCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SHOP_PV_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_UV_KEY;
+
+/**
+ * 店铺浏览统计汇总：定时把redis里当天的PV(24个小时哈希相加)和UV(PFCOUNT)写入 tb_shop_stats
+ * 1.写入的是当天的累计值而不是增量，重复执行、多个节点同时执行结果都一样
+ * 2.过了零点后再汇总一次前一天，补上最后一段时间的数据
+ * 3.只写入存在的店铺，随便拼的id被统计到也不会进表
+ */
+@Slf4j
+@Component
+public class ShopStatsRollupJob {
+
+    private static final int BATCH_SIZE = 500;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private ShopMapper shopMapper;
+
+    @Resource
+    private ShopStatsMapper shopStatsMapper;
+
+    // 已经汇总过最终数据的日期
+    private volatile LocalDate lastFinalized;
+
+    @Scheduled(initialDelay = 60000, fixedDelayString = "${hmdp.shop-view.rollup-ms:600000}")
+    public void rollup() {
+        LocalDate today = LocalDate.now();
+        LocalDate yesterday = today.minusDays(1);
+        try {
+            if (!yesterday.equals(lastFinalized)) {
+                rollup(yesterday);
+                lastFinalized = yesterday;
+            }
+            rollup(today);
+        } catch (Exception e) {
+            log.error("店铺浏览统计汇总失败，下次重试", e);
+        }
+    }
+
+    private void rollup(LocalDate date) {
+        long begin = System.currentTimeMillis();
+        // 1.24个小时哈希的PV相加
+        Map<Long, Long> pv = new HashMap<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int hour = 0; hour < 24; hour++) {
+            LocalDateTime time = date.atTime(hour, 0);
+            if (time.isAfter(now)) {
+                break;
+            }
+            scanHour(SHOP_PV_KEY + time.format(ShopViewCounter.HOUR_FORMAT), pv);
+        }
+        if (pv.isEmpty()) {
+            return;
+        }
+        // 2.分批过滤掉不存在的店铺，PFCOUNT取UV，写入统计表
+        String day = date.format(ShopViewCounter.DAY_FORMAT);
+        List<Long> ids = new ArrayList<>(pv.keySet());
+        int count = 0;
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            List<Long> existing = shopMapper.selectList(new QueryWrapper<Shop>().select("id").in("id", batch))
+                    .stream().map(Shop::getId).collect(Collectors.toList());
+            if (existing.isEmpty()) {
+                continue;
+            }
+            List<Object> uv = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Long id : existing) {
+                    conn.pfCount(SHOP_UV_KEY + day + ":" + id);
+                }
+                return null;
+            });
+            List<ShopStats> stats = new ArrayList<>(existing.size());
+            for (int i = 0; i < existing.size(); i++) {
+                Long id = existing.get(i);
+                Object n = uv.get(i);
+                stats.add(new ShopStats()
+                        .setShopId(id)
+                        .setStatDate(date)
+                        .setPv(pv.get(id))
+                        .setUv(n == null ? 0L : ((Number) n).longValue()));
+            }
+            shopStatsMapper.upsertBatch(stats);
+            count += stats.size();
+        }
+        log.debug("店铺浏览统计汇总完成, date={}, 店铺数={}, 耗时{}ms", date, count, System.currentTimeMillis() - begin);
+    }
+
+    // HSCAN 一个小时的哈希，累加到pv
+    private void scanHour(String key, Map<Long, Long> pv) {
+        ScanOptions options = ScanOptions.scanOptions().count(1000).build();
+        try (Cursor<Map.Entry<Object, Object>> cursor = stringRedisTemplate.opsForHash().scan(key, options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                pv.merge(Long.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()), Long::sum);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("扫描" + key + "失败", e);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.hmdp.job;
+
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+
+/**
+ * 秒杀结束后失效店铺的优惠券目录缓存
+ * 每隔一段时间找出上次检查之后结束的秒杀券(end_time有索引)，删除它们所属店铺的目录缓存；多个节点重复删除没有影响
+ */
+@Slf4j
+@Component
+public class VoucherSaleEndJob {
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    private volatile LocalDateTime lastCheck = LocalDateTime.now();
+
+    @Scheduled(fixedDelayString = "${hmdp.voucher.sale-end-check-ms:60000}")
+    public void evictEnded() {
+        LocalDateTime since = lastCheck;
+        LocalDateTime now = LocalDateTime.now();
+        // 1.上次检查之后结束的秒杀券
+        List<Long> voucherIds = seckillVoucherService.query()
+                .select("voucher_id")
+                .gt("end_time", since)
+                .le("end_time", now)
+                .list()
+                .stream()
+                .map(SeckillVoucher::getVoucherId)
+                .collect(Collectors.toList());
+        if (!voucherIds.isEmpty()) {
+            // 2.所属店铺的目录缓存
+            Set<Long> shopIds = voucherService.query()
+                    .select("shop_id")
+                    .in("id", voucherIds)
+                    .list()
+                    .stream()
+                    .map(Voucher::getShopId)
+                    .collect(Collectors.toSet());
+            for (Long shopId : shopIds) {
+                cacheClient.evict(CACHE_VOUCHER_SHOP_KEY + shopId);
+            }
+            log.debug("{}个秒杀券已结束，失效{}个店铺的优惠券目录", voucherIds.size(), shopIds.size());
+        }
+        lastCheck = now;
+    }
+}
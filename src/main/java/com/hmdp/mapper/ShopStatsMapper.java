@@ -0,0 +1,20 @@
+package com.hmdp.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.entity.ShopStats;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  Mapper 接口
+ * </p>
+ */
+public interface ShopStatsMapper extends BaseMapper<ShopStats> {
+
+    /**
+     * 批量写入当天的累计值，已存在的覆盖(重复汇总是幂等的)
+     */
+    int upsertBatch(@Param("list") List<ShopStats> list);
+}
@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,39 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogService extends IService<Blog> {
 
+    /**
+     * 发布探店博文，关联了店铺的累加店铺的评论数
+     */
+    Result saveBlog(Blog blog);
+
+    /**
+     * 当前用户点赞/取消点赞，返回点赞后的状态
+     */
+    Result likeBlog(Long id);
+
+    /**
+     * 评论数加1，增量记在内存，定时批量写回数据库
+     */
+    void incrComments(Long blogId);
+
+    /**
+     * 把内存中的点赞数、评论数增量批量写回数据库
+     */
+    void flushCounters();
+
+    /**
+     * 分页查询热门博文，按时间衰减的热度倒序
+     */
+    Result queryHotBlog(Integer current);
+
+    /**
+     * 游标翻页查询当前用户的博文，按id倒序
+     */
+    Result queryMyBlogScroll(Long userId, String cursor);
+
+    /**
+     * 游标翻页查询热门博文，按点赞数、id倒序
+     */
+    Result queryHotBlogScroll(String cursor);
+
 }
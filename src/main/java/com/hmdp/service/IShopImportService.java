@@ -0,0 +1,26 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.Result;
+
+import java.io.InputStream;
+
+/**
+ * <p>
+ *  店铺批量导入
+ * </p>
+ */
+public interface IShopImportService {
+
+    /**
+     * 流式导入店铺，边读边按批插入，不会把整个文件读进内存
+     * @param in 上传的内容
+     * @param format csv(第一行是表头，列名和Shop的字段名一致) / ndjson(每行一个JSON对象)
+     * @param taskId 任务id，不传时生成一个；导入过程中可以用它查询进度
+     */
+    Result importShops(InputStream in, String format, String taskId);
+
+    /**
+     * 查询导入进度和逐行错误
+     */
+    Result queryImport(String taskId);
+}
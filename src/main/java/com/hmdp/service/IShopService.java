@@ -1,9 +1,12 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopFilterDTO;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,4 +20,56 @@ public interface IShopService extends IService<Shop> {
     Result queryById(Long id);
 
     Result update(Shop shop);
+
+    Result saveShop(Shop shop);
+
+    /**
+     * 按类型分页查询店铺，传了坐标时按距离由近到远排序，否则传了sortBy时按排行榜排序
+     */
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sortBy);
+
+    /**
+     * 按类型、商圈、均价区间、评分、是否营业中组合筛选店铺
+     */
+    Result queryShopByFilter(ShopFilterDTO filter);
+
+    /**
+     * 按类型游标翻页查询店铺(按id seek，不做COUNT)
+     */
+    Result queryShopByTypeScroll(Integer typeId, String cursor);
+
+    /**
+     * 把店铺坐标写入按类型划分的GEO集合
+     */
+    void addShopGeo(List<Shop> shops);
+
+    /**
+     * 按名称、商圈关键字搜索店铺，按页码翻页；索引还没构建好时走数据库
+     */
+    Result queryShopByName(String name, Integer current);
+
+    /**
+     * 按名称、商圈关键字搜索店铺，游标翻页；索引还没构建好时走数据库
+     */
+    Result queryShopByNameScroll(String name, String cursor);
+
+    /**
+     * 店铺名称联想，支持拼音首字母
+     */
+    Result suggest(String prefix, Integer limit);
+
+    /**
+     * 只查询店铺的部分字段(店铺哈希缓存)
+     */
+    Result queryShopFields(Long id, List<String> fields);
+
+    /**
+     * 店铺计数字段(sold、comments)加减：缓存中原地累加，数据库异步批量写回
+     */
+    void incrShopCounter(Long shopId, String field, long delta);
+
+    /**
+     * 把内存中的计数增量写回数据库
+     */
+    void flushShopCounters();
 }
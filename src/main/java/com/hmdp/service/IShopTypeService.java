@@ -3,6 +3,9 @@ package com.hmdp.service;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.utils.ShopTypeSnapshot;
+
+import java.util.List;
 
 /**
  * <p>
@@ -14,4 +17,17 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IShopTypeService extends IService<ShopType> {
     Result queryTypeList();
+
+    List<ShopType> listOrderBySort();
+
+    /**
+     * 本地快照，还没有加载成功时返回null
+     */
+    ShopTypeSnapshot.Snapshot currentSnapshot();
+
+    Result saveShopType(ShopType shopType);
+
+    Result updateShopType(ShopType shopType);
+
+    Result deleteShopType(Long id);
 }
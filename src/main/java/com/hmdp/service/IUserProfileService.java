@@ -0,0 +1,21 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>
+ *  用户公开资料(昵称、头像)的批量查询，用于给博文等记录填充作者信息
+ * </p>
+ */
+public interface IUserProfileService {
+
+    /**
+     * 批量查询用户资料：本地缓存 -> redis(一次pipeline) -> 数据库(一次IN查询)
+     * 返回的对象是共享的，调用方不要修改
+     * @return 用户id -> 资料，不存在的用户没有对应的项
+     */
+    Map<Long, UserDTO> queryProfiles(Collection<Long> userIds);
+}
@@ -1,10 +1,18 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.BlogHotRank;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +25,36 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private BlogHotRank blogHotRank;
+
+    @Override
+    @Transactional
+    public Result saveComment(BlogComments comment) {
+        // 1.博文必须存在
+        if (comment.getBlogId() == null || blogService.getById(comment.getBlogId()) == null) {
+            return Result.fail("博文不存在");
+        }
+        // 2.保存评论；一级评论的parent_id、answer_id为0
+        if (comment.getParentId() == null) {
+            comment.setParentId(0L);
+        }
+        if (comment.getAnswerId() == null) {
+            comment.setAnswerId(0L);
+        }
+        save(comment);
+        // 3.事务提交后累加评论数(内存增量，定时批量写回数据库)、增加热度
+        Long blogId = comment.getBlogId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                blogService.incrComments(blogId);
+                blogHotRank.onComment(blogId);
+            }
+        });
+        return Result.ok(comment.getId());
+    }
 }
@@ -1,10 +1,44 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IUserProfileService;
+import com.hmdp.utils.BlogHotRank;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
 
 /**
  * <p>
@@ -14,7 +48,247 @@ import org.springframework.stereotype.Service;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    @Resource
+    private IUserProfileService userProfileService;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private BlogHotRank blogHotRank;
+
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+    }
+
+    // 还没写回数据库的点赞数、评论数增量：博文id -> 增量
+    // 累加用merge、取出用remove，都是单个key上的原子操作，取出时不会丢掉并发的累加，写回后的博文也不再占用内存
+    private final ConcurrentHashMap<Long, Long> likedDeltas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> commentsDeltas = new ConcurrentHashMap<>();
+
+    @Override
+    @Transactional
+    public Result saveBlog(Blog blog) {
+        // 1.保存探店博文
+        save(blog);
+        // 2.探店博文算作店铺的一条评价，事务提交后累加评论数(同时更新排行榜)
+        if (blog.getShopId() != null) {
+            shopService.incrShopCounter(blog.getShopId(), "comments", 1);
+        }
+        // 3.事务提交后加入热门博文
+        Long blogId = blog.getId();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                blogHotRank.onCreate(blogId);
+            }
+        });
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result likeBlog(Long id) {
+        Long userId = UserHolder.getUser().getId();
+        // 1.博文必须存在，否则任何id都会建出永不过期的点赞集合，还会混进热门博文排行
+        if (query().select("id").eq("id", id).one() == null) {
+            return Result.fail("博文不存在");
+        }
+        // 2.在点赞集合里切换当前用户的状态，同时更新热度，返回点赞数的变化
+        Long delta = stringRedisTemplate.execute(LIKE_SCRIPT, blogHotRank.likeKeys(id),
+                (Object[]) blogHotRank.likeArgs(userId, System.currentTimeMillis(), id));
+        if (delta == null) {
+            return Result.fail("点赞失败");
+        }
+        // 3.增量先记在内存，定时批量写回数据库，点赞不会争抢博文的行锁
+        likedDeltas.merge(id, delta, Long::sum);
+        return Result.ok(delta > 0);
+    }
+
+    @Override
+    public void incrComments(Long blogId) {
+        // 和点赞一样先记在内存，评论不会争抢博文的行锁
+        commentsDeltas.merge(blogId, 1L, Long::sum);
+    }
+
+    // 定时把点赞数、评论数增量批量写回数据库
+    @Override
+    @Scheduled(fixedDelayString = "${hmdp.blog.counter-flush-ms:5000}")
+    @PreDestroy
+    public synchronized void flushCounters() {
+        // 1.取出增量，同一篇博文的两个计数合并成一条UPDATE
+        Map<Long, long[]> batch = new HashMap<>();
+        drainDeltas(likedDeltas, batch, 0);
+        drainDeltas(commentsDeltas, batch, 1);
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 2.JDBC批量执行
+        try {
+            executeBatch(batch.entrySet(), (sqlSession, e) -> sqlSession.getMapper(BlogMapper.class)
+                    .incrCounters(e.getKey(), e.getValue()[0], e.getValue()[1]));
+        } catch (Exception ex) {
+            // 3.写回失败，增量放回去，下次再写
+            log.error("博文计数写回数据库失败，下次重试", ex);
+            batch.forEach((blogId, deltas) -> {
+                likedDeltas.merge(blogId, deltas[0], Long::sum);
+                commentsDeltas.merge(blogId, deltas[1], Long::sum);
+            });
+        }
+    }
+
+    // 逐个key原子地取出并移除增量
+    private static void drainDeltas(ConcurrentHashMap<Long, Long> deltas, Map<Long, long[]> batch, int index) {
+        for (Long blogId : deltas.keySet()) {
+            Long delta = deltas.remove(blogId);
+            if (delta != null && delta != 0) {
+                batch.computeIfAbsent(blogId, k -> new long[2])[index] = delta;
+            }
+        }
+    }
+
+    @Override
+    public Result queryHotBlog(Integer current) {
+        // 0.页码小于1按第一页，超出上限直接返回空；负的起点在ZREVRANGE里会取到排行末尾
+        if (current == null || current < 1) {
+            current = 1;
+        } else if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        int from = (current - 1) * size;
+        // 1.热门博文还没有构建，退化为数据库按点赞数排序
+        List<Long> ids = blogHotRank.page(from, from + size);
+        if (ids.isEmpty() && !blogHotRank.built()) {
+            List<Blog> blogs = query()
+                    .orderByDesc("liked")
+                    .page(new Page<>(current, size, false))
+                    .getRecords();
+            fillAuthors(blogs);
+            fillIsLike(blogs);
+            return Result.ok(blogs);
+        }
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.一次查询这一页的博文，按热度顺序排列；已经删除的从热门博文里移除
+        Map<Long, Blog> byId = listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> blogs = new ArrayList<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            Blog blog = byId.get(id);
+            if (blog == null) {
+                missing.add(id);
+            } else {
+                blogs.add(blog);
+            }
+        }
+        blogHotRank.remove(missing);
+        // 3.一次查询所有作者和当前用户的点赞状态
+        fillAuthors(blogs);
+        fillIsLike(blogs);
+        return Result.ok(blogs);
+    }
+
+    @Override
+    public Result queryMyBlogScroll(Long userId, String cursor) {
+        // 1.解析游标：上一页最后一篇博文的id
+        long[] last;
+        try {
+            last = ScrollCursor.decodeLongs(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        // 2.WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT n，走 (user_id, id) 索引
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<Blog> blogs = query()
+                .eq("user_id", userId)
+                .lt(last != null, "id", last == null ? null : last[0])
+                .orderByDesc("id")
+                .last("LIMIT " + size)
+                .list();
+        // 3.这一页是满的，最后一条就是下一页的游标
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        if (blogs.size() == size) {
+            r.setCursor(ScrollCursor.encode(blogs.get(blogs.size() - 1).getId()));
+        }
+        return Result.ok(r);
+    }
+
+    @Override
+    public Result queryHotBlogScroll(String cursor) {
+        // 1.解析游标：上一页最后一篇博文的点赞数和id
+        long[] last;
+        try {
+            last = ScrollCursor.decodeLongs(cursor, 2);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        // 2.WHERE liked < ? OR (liked = ? AND id < ?) ORDER BY liked DESC, id DESC LIMIT n，走 (liked, id) 索引
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        List<Blog> blogs = query()
+                .and(last != null, w -> w
+                        .lt("liked", last[0])
+                        .or(o -> o.eq("liked", last[0]).lt("id", last[1])))
+                .orderByDesc("liked", "id")
+                .last("LIMIT " + size)
+                .list();
+        // 3.一次查询所有作者和当前用户的点赞状态
+        fillAuthors(blogs);
+        fillIsLike(blogs);
+        // 4.这一页是满的，最后一条就是下一页的游标
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        if (blogs.size() == size) {
+            Blog tail = blogs.get(blogs.size() - 1);
+            r.setCursor(ScrollCursor.encode(tail.getLiked() == null ? 0 : tail.getLiked(), tail.getId()));
+        }
+        return Result.ok(r);
+    }
+
+    // 当前用户是否点赞过，一个pipeline查询这一页的所有博文；没有登录不填
+    private void fillIsLike(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        if (user == null || blogs.isEmpty()) {
+            return;
+        }
+        String member = user.getId().toString();
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zScore(BLOG_LIKED_KEY + blog.getId(), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
+    }
+
+    // 作者的昵称、头像，整页一次批量查询(本地缓存 -> redis -> 数据库)
+    private void fillAuthors(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = userProfileService.queryProfiles(userIds);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+    }
 }
@@ -0,0 +1,390 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.text.csv.CsvReadConfig;
+import cn.hutool.core.text.csv.CsvUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IShopImportService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopLeaderboard;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * <p>
+ *  店铺批量导入：逐行读取、校验，攒够一批后JDBC批量插入(rewriteBatchedStatements合并成多行INSERT)，
+ *  插入成功的店铺再通过pipeline写入GEO集合、布隆过滤器、店铺缓存和排行榜；
+ *  进度写在哈希 shop:import:{taskId} 里，逐行错误写在列表 shop:import:{taskId}:errors 里
+ * </p>
+ */
+@Slf4j
+@Service
+public class ShopImportServiceImpl implements IShopImportService {
+
+    private static final String FORMAT_CSV = "csv";
+    private static final String FORMAT_NDJSON = "ndjson";
+
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_DONE = "done";
+    private static final String STATUS_FAILED = "failed";
+
+    // 查询进度时最多返回的错误条数
+    private static final int ERRORS_PREVIEW = 100;
+    // redis的GEO只支持这个范围内的纬度
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private RedisIdWorker redisIdWorker;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private ShopLeaderboard shopLeaderboard;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private ShopCatalog shopCatalog;
+
+    @Value("${hmdp.import.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${hmdp.import.max-errors:1000}")
+    private int maxErrors;
+
+    @Override
+    public Result importShops(InputStream in, String format, String taskId) {
+        if (!FORMAT_CSV.equals(format) && !FORMAT_NDJSON.equals(format)) {
+            return Result.fail("不支持的格式：" + format);
+        }
+        if (StrUtil.isBlank(taskId)) {
+            taskId = String.valueOf(redisIdWorker.nextId("shop:import"));
+        } else if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(SHOP_IMPORT_KEY + taskId))) {
+            return Result.fail("导入任务已存在：" + taskId);
+        }
+        // 1.店铺类型很少，校验用的类型id一次读出来
+        Set<Long> typeIds = new HashSet<>();
+        for (ShopType type : shopTypeService.list()) {
+            typeIds.add(type.getId());
+        }
+        ImportTask task = new ImportTask(taskId, typeIds);
+        task.start();
+        // 2.逐行读取，攒够一批就写入
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            if (FORMAT_CSV.equals(format)) {
+                CsvUtil.getReader(CsvReadConfig.defaultConfig().setContainsHeader(true).setTrimField(true))
+                        .read(reader, row -> task.accept(row.getOriginalLineNumber() + 1, row.getFieldMap()));
+            } else {
+                readNdjson(reader, task);
+            }
+            // 3.最后不满一批的
+            task.flush();
+            task.finish(STATUS_DONE);
+        } catch (Exception e) {
+            log.error("店铺导入失败, taskId={}", taskId, e);
+            task.flush();
+            task.finish(STATUS_FAILED);
+        }
+        return Result.ok(task.summary());
+    }
+
+    @Override
+    public Result queryImport(String taskId) {
+        String key = SHOP_IMPORT_KEY + taskId;
+        Map<Object, Object> progress = stringRedisTemplate.opsForHash().entries(key);
+        // 只能查询自己发起的导入任务
+        if (progress.isEmpty() || !UserHolder.getUser().getId().toString().equals(progress.get("userId"))) {
+            return Result.fail("导入任务不存在");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        progress.forEach((k, v) -> result.put(k.toString(), v));
+        result.put("errors", stringRedisTemplate.opsForList().range(key + ":errors", 0, ERRORS_PREVIEW - 1));
+        return Result.ok(result);
+    }
+
+    private static void readNdjson(BufferedReader reader, ImportTask task) throws IOException {
+        String line;
+        long lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (StrUtil.isBlank(line)) {
+                continue;
+            }
+            JSONObject row;
+            try {
+                row = JSONUtil.parseObj(line);
+            } catch (Exception e) {
+                task.invalid(lineNo, "不是有效的JSON");
+                continue;
+            }
+            task.accept(lineNo, row);
+        }
+    }
+
+    /**
+     * 一次导入，只在请求线程里使用
+     */
+    private class ImportTask {
+        private final String key;
+        private final Set<Long> typeIds;
+        private final List<Long> lines = new ArrayList<>();
+        private final List<Shop> chunk = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long read, success, failed, recordedErrors;
+
+        private ImportTask(String taskId, Set<Long> typeIds) {
+            this.key = SHOP_IMPORT_KEY + taskId;
+            this.typeIds = typeIds;
+        }
+
+        private void start() {
+            Map<String, String> progress = new HashMap<>();
+            progress.put("status", STATUS_RUNNING);
+            progress.put("userId", UserHolder.getUser().getId().toString());
+            progress.put("read", "0");
+            progress.put("success", "0");
+            progress.put("failed", "0");
+            progress.put("startTime", LocalDateTime.now().withNano(0).toString());
+            stringRedisTemplate.opsForHash().putAll(key, progress);
+            stringRedisTemplate.expire(key, SHOP_IMPORT_TTL, TimeUnit.HOURS);
+        }
+
+        private void accept(long lineNo, Map<String, ?> row) {
+            read++;
+            Shop shop;
+            try {
+                shop = toShop(row, typeIds);
+            } catch (IllegalArgumentException e) {
+                reject(lineNo, e.getMessage());
+                return;
+            }
+            lines.add(lineNo);
+            chunk.add(shop);
+            if (chunk.size() >= chunkSize) {
+                flush();
+            }
+        }
+
+        // 读到了但是解析不了的一行
+        private void invalid(long lineNo, String message) {
+            read++;
+            reject(lineNo, message);
+        }
+
+        private void reject(long lineNo, String message) {
+            failed++;
+            if (recordedErrors < maxErrors) {
+                errors.add("第" + lineNo + "行：" + message);
+                recordedErrors++;
+            }
+        }
+
+        private void flush() {
+            List<Shop> saved = new ArrayList<>(chunk.size());
+            if (!chunk.isEmpty()) {
+                // 1.整批插入，失败了(比如某一行超长)再逐行插入，找出是哪几行
+                try {
+                    shopService.saveBatch(chunk, chunkSize);
+                    saved.addAll(chunk);
+                } catch (Exception e) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        Shop shop = chunk.get(i).setId(null);
+                        try {
+                            shopService.save(shop);
+                            saved.add(shop);
+                        } catch (Exception ex) {
+                            reject(lines.get(i), "写入数据库失败：" + ExceptionUtil.getRootCauseMessage(ex));
+                        }
+                    }
+                }
+                success += saved.size();
+                // 2.写入GEO集合、布隆过滤器、店铺缓存、排行榜和本节点的内存索引
+                if (!saved.isEmpty()) {
+                    populate(saved);
+                }
+                lines.clear();
+                chunk.clear();
+            }
+            // 3.更新进度
+            List<String> batchErrors = new ArrayList<>(errors);
+            errors.clear();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                conn.hSet(key, "read", String.valueOf(read));
+                conn.hSet(key, "success", String.valueOf(success));
+                conn.hSet(key, "failed", String.valueOf(failed));
+                if (!batchErrors.isEmpty()) {
+                    conn.rPush(key + ":errors", batchErrors.toArray(new String[0]));
+                    conn.expire(key + ":errors", TimeUnit.HOURS.toSeconds(SHOP_IMPORT_TTL));
+                }
+                return null;
+            });
+        }
+
+        private void populate(List<Shop> saved) {
+            List<Long> ids = new ArrayList<>(saved.size());
+            Map<String, Shop> values = new HashMap<>(saved.size() * 2);
+            for (Shop shop : saved) {
+                ids.add(shop.getId());
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            try {
+                shopBloomFilter.addAll(ids);
+            } catch (Exception e) {
+                // 布隆过滤器里没有这些店铺会把它们当成不存在，先停止拦截，等下次预热重新写入
+                log.error("导入的店铺写入布隆过滤器失败，停止拦截, ids={}~{}", ids.get(0), ids.get(ids.size() - 1), e);
+                shopBloomFilter.markNotReady();
+            }
+            try {
+                shopService.addShopGeo(saved);
+                cacheClient.setWithLogicalExpireBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                shopLeaderboard.addAll(saved);
+            } catch (Exception e) {
+                // 数据已经入库，写入失败不算导入失败：缓存按需加载，排行榜由定时任务重建，GEO集合重新预热时补上
+                log.error("导入的店铺写入redis失败, ids={}~{}", ids.get(0), ids.get(ids.size() - 1), e);
+            }
+            for (Shop shop : saved) {
+                shopNameIndex.upsert(shop);
+                shopCatalog.upsert(shop);
+            }
+        }
+
+        private void finish(String status) {
+            Map<String, String> progress = new HashMap<>();
+            progress.put("status", status);
+            progress.put("endTime", LocalDateTime.now().withNano(0).toString());
+            stringRedisTemplate.opsForHash().putAll(key, progress);
+        }
+
+        private Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("taskId", key.substring(SHOP_IMPORT_KEY.length()));
+            summary.put("read", read);
+            summary.put("success", success);
+            summary.put("failed", failed);
+            return summary;
+        }
+    }
+
+    // 一行数据转成店铺并校验，不合法时抛出带原因的IllegalArgumentException
+    private static Shop toShop(Map<String, ?> row, Set<Long> typeIds) {
+        Shop shop = new Shop()
+                .setName(text(row, "name", 128, true))
+                .setTypeId(number(row, "typeId", true).longValue())
+                .setImages(StrUtil.nullToEmpty(text(row, "images", 1024, false)))
+                .setArea(text(row, "area", 128, false))
+                .setAddress(text(row, "address", 255, true))
+                .setX(number(row, "x", true).doubleValue())
+                .setY(number(row, "y", true).doubleValue())
+                .setOpenHours(text(row, "openHours", 32, false));
+        Number avgPrice = number(row, "avgPrice", false);
+        Number score = number(row, "score", false);
+        Number sold = number(row, "sold", false);
+        Number comments = number(row, "comments", false);
+        shop.setAvgPrice(avgPrice == null ? null : avgPrice.longValue())
+                .setScore(score == null ? 0 : score.intValue())
+                .setSold(sold == null ? 0 : sold.intValue())
+                .setComments(comments == null ? 0 : comments.intValue());
+        if (!typeIds.contains(shop.getTypeId())) {
+            throw new IllegalArgumentException("typeId不存在：" + shop.getTypeId());
+        }
+        // 经纬度在数据库里是无符号的，纬度还要在redis GEO支持的范围内
+        if (shop.getX() < 0 || shop.getX() > 180 || shop.getY() < 0 || shop.getY() > MAX_LATITUDE) {
+            throw new IllegalArgumentException("经纬度超出范围：" + shop.getX() + "," + shop.getY());
+        }
+        if (shop.getScore() < 0 || shop.getScore() > 50) {
+            throw new IllegalArgumentException("score应为0~50(评分乘以10)");
+        }
+        if ((shop.getAvgPrice() != null && shop.getAvgPrice() < 0) || shop.getSold() < 0 || shop.getComments() < 0) {
+            throw new IllegalArgumentException("avgPrice、sold、comments不能为负数");
+        }
+        if (shop.getOpenHours() != null && ShopCatalog.parseOpenHours(shop.getOpenHours())[0] < 0) {
+            throw new IllegalArgumentException("openHours格式应为 10:00-22:00");
+        }
+        // 创建、更新时间和数据库一致(精确到秒)，缓存的版本号才对得上
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        return shop.setCreateTime(now).setUpdateTime(now);
+    }
+
+    private static String text(Map<String, ?> row, String field, int maxLength, boolean required) {
+        Object value = row.get(field);
+        String text = value == null ? null : StrUtil.trimToNull(value.toString());
+        if (text == null) {
+            if (required) {
+                throw new IllegalArgumentException(field + "不能为空");
+            }
+            return null;
+        }
+        if (text.length() > maxLength) {
+            throw new IllegalArgumentException(field + "不能超过" + maxLength + "个字符");
+        }
+        return text;
+    }
+
+    private static Number number(Map<String, ?> row, String field, boolean required) {
+        Object value = row.get(field);
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        String text = value == null ? null : StrUtil.trimToNull(value.toString());
+        if (text == null) {
+            if (required) {
+                throw new IllegalArgumentException(field + "不能为空");
+            }
+            return null;
+        }
+        try {
+            return text.contains(".") ? (Number) Double.valueOf(text) : (Number) Long.valueOf(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + "不是有效的数字：" + text);
+        }
+    }
+}
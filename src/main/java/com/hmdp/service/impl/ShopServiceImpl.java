@@ -1,28 +1,60 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import cn.hutool.core.date.LocalDateTimeUtil;
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import com.hmdp.controller.ShopController;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.ShopFilterDTO;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRebuildExecutor;
+import com.hmdp.utils.NearbyShopEngine;
 import com.hmdp.utils.RedisData;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.ShopCatalog;
+import com.hmdp.utils.ShopLeaderboard;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.ShopSuggestTrie;
+import com.hmdp.utils.SystemConstants;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -35,6 +67,7 @@ import static com.hmdp.utils.RedisConstants.*;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
@@ -44,16 +77,33 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     @Resource
     private CacheClient cacheClient;
 
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
     @Override
     public Result queryById(Long id) {
+        // 店铺按字段缓存为哈希
+        if (shopHashEnabled) {
+            Shop shop = queryShopHash(id);
+            return shop == null ? Result.fail("店铺不存在") : Result.ok(shop);
+        }
+
         // 缓存穿透
         // Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         // 互斥锁解决缓存击穿
-        // Shop shop = queryWithMutex(id);
+        // Shop shop = cacheClient.queryWithMutex(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 概率提前刷新(XFetch)解决缓存击穿
+        // Shop shop = cacheClient.queryWithEarlyRefresh(CACHE_SHOP_KEY,id,Shop.class,this::getById,CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         // 逻辑过期解决缓存击穿
-        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY,id,Shop.class,this::getById,10L, TimeUnit.SECONDS);
+        Shop shop = cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY,id,Shop.class,this::loadShop,10L, TimeUnit.SECONDS);
+        if (shop == null) {
+            // redis里没有(没有预热过、修改后被失效、空值)，逻辑过期不会回源，先互斥加载一次，和CacheQueryAspect的LOGICAL_EXPIRE一致；
+            // 下次读到时不是逻辑过期格式，会异步重建为逻辑过期格式
+            shop = cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::loadShop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
         if(shop == null){
             return Result.fail("店铺不存在");
         }
@@ -62,8 +112,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return Result.ok(shop);
     }
 
-    // 线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    // 缓存未命中时的数据库查询：布隆过滤器判断一定不存在的店铺直接返回null，不会穿透到数据库
+    // 只在查库前判断，本地缓存和redis命中时不多一次布隆过滤器的往返
+    private Shop loadShop(Long id) {
+        return shopBloomFilter.mightContain(id) ? getById(id) : null;
+    }
+
+    // 全局共享的缓存重建调度器
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
 
     // 逻辑过期解决缓存击穿
     public Shop queryWithLogicalExpire(Long id){
@@ -117,106 +174,35 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
             }
 
 
-            // 6.3成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            // 6.3成功，交给重建调度器异步重建（异常由调度器记录，不会被吞掉）
+            boolean accepted = cacheRebuildExecutor.submit(key, () -> {
                 try {
                     // 重建缓存
                     // this指当前对象
                     this.saveShop2Redis(id,20L);
-                } catch (Exception e) {
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     throw new RuntimeException(e);
                 } finally {
                     // 释放锁
                     unlock(lockKey);
                 }
             });
+            // 该key已在排队或者队列已满，释放锁，返回旧数据
+            if (!accepted) {
+                unlock(lockKey);
+            }
         }
         // 6.4返回过期的商铺信息
 
         return shop;
     }
 
-    // 互斥锁解决缓存穿透
+    // 互斥锁解决缓存击穿
+    // 原来没抢到锁就休眠50ms再递归，热点key冷启动时会堆出大量休眠线程和SETNX请求
+    // 现在交给CacheClient：同一JVM内的并发未命中合并为一次重建，只有leader去抢锁、查数据库
     public Shop queryWithMutex(Long id){
-        String key = CACHE_SHOP_KEY + id;
-        // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-
-        // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)){
-            // 3.存在，直接返回
-            Shop shop = JSONUtil.toBean(shopJson,Shop.class);
-            return shop;
-        }
-
-        // 判读命中的是否为空值
-        // null不代表是"",而""是缓存穿透，而null代表缓存没有数据，要去数据库查
-        // 不等于null就是等于空串
-        // shopJson要么是""要么是null。是""说明以前查过，这是无效id；是null证明没查过，所以去查数据库
-//        if (shopJson != null ){
-//            // 返回错误信息
-//            return Result.fail("店铺不存在！");
-//        }
-
-        // 下面更好理解
-        // 判断是否为空值 (解决缓存穿透)
-        if ("".equals(shopJson)){
-            // 返回错误信息
-            return null;
-        }
-
-        // 4.开始实现缓存重建
-        // 4.1 获取互斥锁
-        String lockKey = "lock:shop:" + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2 判断是否获取成功
-            if (!isLock){
-                // 4.3 失败，休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(id);
-            }
-
-            // 检查完缓存是空，准备去抢锁的那一瞬间，前一个持有锁的线程刚好重建完缓存并释放了锁。
-            // 这时抢到了锁，如果不进行二次检查，就会再查一次数据库，导致多余的数据库压力
-            // 所以获取锁成功后，再次检测缓存是否存在 (Double Check)
-            shopJson = stringRedisTemplate.opsForValue().get(key);
-            // 再次判断是否存在
-            if (StrUtil.isNotBlank(shopJson)){
-                // 如果存在，说明上一个线程已经重建好了，直接返回，无需查库
-                return JSONUtil.toBean(shopJson, Shop.class);
-            }
-            // 再次判断是否为空值 (防止并发穿透)
-            if ("".equals(shopJson)){
-                return null;
-            }
-
-            // 4，4 成功，根据id查询数据库
-            shop = getById(id);
-
-            // 模拟重建的延时
-            Thread.sleep(200);
-
-            // 5.不存在，返回错误
-            if (shop == null) {
-                // 将空值写入redis
-                stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-
-            // 6.存在，写入redis
-            stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(shop),CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 7.释放互斥锁
-            unlock(lockKey);
-        }
-
-        // 8.返回
-        return shop;
+        return cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::loadShop, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
     public Shop queryWithPassThrough(Long id){
@@ -292,10 +278,545 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(id == null){
             return Result.fail("店铺id不能为空");
         }
-        // 1.更新数据库
+        // 1.查询旧数据，用来同步GEO集合(类型或坐标可能变了)
+        Shop old = getById(id);
+        if (old == null) {
+            return Result.fail("店铺不存在");
+        }
+        // 2.更新数据库，更新时间作为缓存版本号(数据库只精确到秒)
+        shop.setUpdateTime(LocalDateTime.now().withNano(0));
         updateById(shop);
-        // 2.删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + shop.getId());
+        // 3.事务提交后失效缓存：推进版本号并删除，延迟后再重复一次，正在进行的旧数据重建无法再写回
+        cacheClient.invalidate(CACHE_SHOP_KEY + id, shop.cacheVersion());
+        cacheClient.invalidate(CACHE_SHOP_HASH_KEY + id, shop.cacheVersion());
+        // 4.事务提交后同步GEO集合和搜索索引
+        Shop merged = new Shop()
+                .setId(id)
+                .setTypeId(shop.getTypeId() != null ? shop.getTypeId() : old.getTypeId())
+                .setX(shop.getX() != null ? shop.getX() : old.getX())
+                .setY(shop.getY() != null ? shop.getY() : old.getY())
+                .setName(shop.getName() != null ? shop.getName() : old.getName())
+                .setArea(shop.getArea() != null ? shop.getArea() : old.getArea())
+                .setScore(shop.getScore() != null ? shop.getScore() : old.getScore())
+                .setSold(shop.getSold() != null ? shop.getSold() : old.getSold())
+                .setComments(shop.getComments() != null ? shop.getComments() : old.getComments())
+                .setAvgPrice(shop.getAvgPrice() != null ? shop.getAvgPrice() : old.getAvgPrice())
+                .setOpenHours(shop.getOpenHours() != null ? shop.getOpenHours() : old.getOpenHours());
+        afterCommit(() -> {
+            if (!merged.getTypeId().equals(old.getTypeId())) {
+                nearbyShopEngine.remove(old.getTypeId(), id);
+            }
+            addShopGeo(Collections.singletonList(merged));
+            shopNameIndex.upsert(merged);
+            shopLeaderboard.upsert(merged, old.getTypeId());
+            shopCatalog.upsert(merged);
+        });
         return Result.ok(shop);
     }
+
+    @Override
+    @Transactional
+    public Result saveShop(Shop shop) {
+        // 1.写入数据库
+        save(shop);
+        // 2.事务提交后加入布隆过滤器、GEO集合、搜索索引、排行榜和店铺目录
+        afterCommit(() -> {
+            try {
+                shopBloomFilter.addAll(Collections.singletonList(shop.getId()));
+            } catch (Exception e) {
+                // 布隆过滤器里没有这个店铺会把它当成不存在，先停止拦截，等下次预热重新写入；其余索引照常写入
+                log.error("新店铺写入布隆过滤器失败，停止拦截, id={}", shop.getId(), e);
+                shopBloomFilter.markNotReady();
+            }
+            addShopGeo(Collections.singletonList(shop));
+            shopNameIndex.upsert(shop);
+            shopLeaderboard.upsert(shop, null);
+            shopCatalog.upsert(shop);
+        });
+        return Result.ok(shop.getId());
+    }
+
+    // ------------------------ 附近的店铺 ------------------------
+
+    @Resource
+    private NearbyShopEngine nearbyShopEngine;
+
+    @Resource
+    private ShopLeaderboard shopLeaderboard;
+
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y, String sortBy) {
+        if (current == null || current < 1) {
+            current = 1;
+        }
+        // 1.没有坐标，指定了排序字段的走排行榜
+        if ((x == null || y == null) && sortBy != null) {
+            return queryShopByRank(typeId, current, sortBy);
+        }
+        // 2.没有坐标，按数据库分页查询
+        if (x == null || y == null) {
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
+        }
+        // 3.计算分页参数；按距离查询时每页都要取出前 current*size 个，页码超出上限直接返回空
+        if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+
+        // 4.按距离由近到远查询前end个
+        List<NearbyShopEngine.Hit> hits = nearbyShopEngine.search(typeId, x, y, SystemConstants.NEARBY_SHOP_RADIUS, end);
+        if (hits.size() <= from) {
+            // 没有下一页了
+            return Result.ok(Collections.emptyList());
+        }
+
+        // 5.截取 from ~ end 的部分，记录店铺id和距离
+        List<Long> ids = new ArrayList<>(hits.size() - from);
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size() - from);
+        hits.stream().skip(from).forEach(hit -> {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
+        });
+
+        // 6.一次查询所有店铺，保持按距离排好的顺序
+        String idStr = StrUtil.join(",", ids);
+        List<Shop> shops = query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+        for (Shop shop : shops) {
+            shop.setDistance(distanceMap.get(shop.getId()));
+        }
+        return Result.ok(shops);
+    }
+
+    // 按销量、评分或评论数排序：ZREVRANGE取一页id，再批量读缓存，缓存里没有的一次查库后回填
+    private Result queryShopByRank(Integer typeId, Integer current, String sortBy) {
+        if (!ShopLeaderboard.supports(sortBy)) {
+            return Result.fail("不支持的排序字段");
+        }
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 1.排行榜还没有构建，退化为数据库排序(不查总数)
+        if (!shopLeaderboard.exists(typeId, sortBy)) {
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .orderByDesc(sortBy, "id")
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
+            return Result.ok(page.getRecords());
+        }
+        // 2.一页店铺id
+        List<Long> ids = shopLeaderboard.page(typeId, sortBy, from, end);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 3.批量读出店铺
+        return Result.ok(listShopsInOrder(ids));
+    }
+
+    // 按id的顺序批量读取店铺：一次MGET读缓存，缓存中没有的一次查询数据库后批量回填
+    private List<Shop> listShopsInOrder(List<Long> ids) {
+        // 1.一次MGET读出店铺缓存
+        Map<Long, Shop> cached = cacheClient.multiGet(CACHE_SHOP_KEY, ids, Shop.class);
+        // 2.缓存中没有的，一次查询数据库后批量回填
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (!cached.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Shop> values = new HashMap<>(missing.size() * 2);
+            for (Shop shop : listByIds(missing)) {
+                cached.put(shop.getId(), shop);
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            cacheClient.setWithLogicalExpireBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
+        // 3.按传入的顺序返回
+        List<Shop> shops = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Shop shop = cached.get(id);
+            if (shop != null) {
+                shops.add(shop);
+            }
+        }
+        return shops;
+    }
+
+    // ------------------------ 多条件筛选 ------------------------
+
+    @Resource
+    private ShopCatalog shopCatalog;
+
+    @Override
+    public Result queryShopByFilter(ShopFilterDTO filter) {
+        if (filter.getSortBy() != null && !ShopCatalog.supports(filter.getSortBy())) {
+            return Result.fail("不支持的排序字段");
+        }
+        boolean located = filter.getX() != null && filter.getY() != null;
+        if (ShopCatalog.SORT_DISTANCE.equals(filter.getSortBy()) && !located) {
+            return Result.fail("按距离排序需要坐标");
+        }
+        int current = filter.getCurrent() == null || filter.getCurrent() < 1 ? 1 : filter.getCurrent();
+        if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        // 1.店铺目录还没加载完成，能用SQL表达的条件退化为数据库查询
+        if (!shopCatalog.isReady()) {
+            if (Boolean.TRUE.equals(filter.getOpenNow()) || ShopCatalog.SORT_DISTANCE.equals(filter.getSortBy())) {
+                return Result.fail("店铺目录加载中，请稍后再试");
+            }
+            String column = ShopCatalog.SORT_PRICE.equals(filter.getSortBy()) ? "avg_price"
+                    : ShopCatalog.SORT_SOLD.equals(filter.getSortBy()) ? "sold" : "score";
+            Page<Shop> page = query()
+                    .eq(filter.getTypeId() != null, "type_id", filter.getTypeId())
+                    .eq(StrUtil.isNotBlank(filter.getArea()), "area", filter.getArea())
+                    .ge(filter.getMinPrice() != null, "avg_price", filter.getMinPrice())
+                    .le(filter.getMaxPrice() != null, "avg_price", filter.getMaxPrice())
+                    .ge(filter.getMinScore() != null, "score", filter.getMinScore())
+                    .orderBy(true, "avg_price".equals(column), column)
+                    .orderByAsc("id")
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE, false));
+            return Result.ok(page.getRecords());
+        }
+        // 2.内存中筛选、排序，得到这一页的店铺id
+        List<NearbyShopEngine.Hit> hits = shopCatalog.filter(filter, LocalTime.now(), from,
+                SystemConstants.DEFAULT_PAGE_SIZE);
+        if (hits.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        List<Long> ids = new ArrayList<>(hits.size());
+        Map<Long, Double> distanceMap = new HashMap<>(hits.size() * 2);
+        for (NearbyShopEngine.Hit hit : hits) {
+            ids.add(hit.getId());
+            distanceMap.put(hit.getId(), hit.getDistance());
+        }
+        // 3.批量读出店铺
+        List<Shop> shops = listShopsInOrder(ids);
+        if (located) {
+            shops.forEach(shop -> shop.setDistance(distanceMap.get(shop.getId())));
+        }
+        return Result.ok(shops);
+    }
+
+    @Override
+    public Result queryShopByTypeScroll(Integer typeId, String cursor) {
+        // 1.解析游标：上一页最后一个店铺的id
+        long[] last;
+        try {
+            last = ScrollCursor.decodeLongs(cursor, 1);
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        // 2.WHERE type_id = ? AND id > ? ORDER BY id LIMIT n，走 (type_id, id) 索引
+        int size = SystemConstants.DEFAULT_PAGE_SIZE;
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt(last != null, "id", last == null ? null : last[0])
+                .orderByAsc("id")
+                .last("LIMIT " + size)
+                .list();
+        // 3.这一页是满的，最后一条就是下一页的游标
+        ScrollResult r = new ScrollResult();
+        r.setList(shops);
+        if (shops.size() == size) {
+            r.setCursor(ScrollCursor.encode(shops.get(shops.size() - 1).getId()));
+        }
+        return Result.ok(r);
+    }
+
+    @Override
+    public void addShopGeo(List<Shop> shops) {
+        nearbyShopEngine.add(shops);
+    }
+
+    // ------------------------ 店铺名称搜索 ------------------------
+
+    // 游标的第一段区分来源：i,匹配程度,评分,id 是索引中的位置；d,id 是数据库按id seek的位置
+    private static final String INDEX_CURSOR = "i";
+    private static final String DB_CURSOR = "d";
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
+
+    @Resource
+    private ShopSuggestTrie shopSuggestTrie;
+
+    @Override
+    public Result suggest(String prefix, Integer limit) {
+        // 前缀树还没构建好时返回空，联想不回源数据库
+        return Result.ok(shopSuggestTrie.suggest(prefix, limit));
+    }
+
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        if (current == null || current < 1) {
+            current = 1;
+        }
+        // 1.索引还没构建好，走数据库，不做COUNT
+        if (!shopNameIndex.isReady()) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .orderByAsc("id")
+                    .page(new Page<>(current, size, false));
+            return Result.ok(page.getRecords());
+        }
+        // 2.页码超出上限直接返回空，每页都要取出前 current*size 个
+        if (current > SystemConstants.MAX_PAGE) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 3.从索引中取这一页，再批量查询店铺
+        return Result.ok(listShopsByMatches(shopNameIndex.search(name, (current - 1) * size, size)));
+    }
+
+    @Override
+    public Result queryShopByNameScroll(String name, String cursor) {
+        int size = SystemConstants.MAX_PAGE_SIZE;
+        // 1.解析游标
+        ShopNameIndex.Match after = null;
+        Long afterId = null;
+        try {
+            String[] parts = ScrollCursor.decode(cursor);
+            if (parts != null && parts.length == 4 && INDEX_CURSOR.equals(parts[0])) {
+                after = new ShopNameIndex.Match(
+                        Long.parseLong(parts[3]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } else if (parts != null && parts.length == 2 && DB_CURSOR.equals(parts[0])) {
+                afterId = Long.parseLong(parts[1]);
+            } else if (parts != null) {
+                return Result.fail("无效的游标");
+            }
+        } catch (IllegalArgumentException e) {
+            return Result.fail("无效的游标");
+        }
+        ScrollResult r = new ScrollResult();
+
+        // 2.索引还没构建好，走数据库：按id seek，不做COUNT
+        if (!shopNameIndex.isReady()) {
+            List<Shop> shops = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .gt(afterId != null, "id", afterId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + size)
+                    .list();
+            r.setList(shops);
+            if (shops.size() == size) {
+                r.setCursor(ScrollCursor.encode(DB_CURSOR, shops.get(shops.size() - 1).getId()));
+            }
+            return Result.ok(r);
+        }
+
+        // 3.从索引中取游标之后的一页
+        List<ShopNameIndex.Match> matches = shopNameIndex.searchAfter(name, after, size);
+        r.setList(listShopsByMatches(matches));
+
+        // 4.这一页是满的，最后一条就是下一页的游标
+        if (matches.size() == size) {
+            ShopNameIndex.Match last = matches.get(matches.size() - 1);
+            r.setCursor(ScrollCursor.encode(INDEX_CURSOR, last.getQuality(), last.getScore(), last.getId()));
+        }
+        return Result.ok(r);
+    }
+
+    // 一次查询这一页的店铺，保持索引排好的顺序
+    private List<Shop> listShopsByMatches(List<ShopNameIndex.Match> matches) {
+        if (matches.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(matches.size());
+        matches.forEach(m -> ids.add(m.getId()));
+        String idStr = StrUtil.join(",", ids);
+        return query().in("id", ids).last("ORDER BY FIELD(id," + idStr + ")").list();
+    }
+
+    // ------------------------ 店铺哈希缓存 ------------------------
+    // 整个店铺存成一个JSON时，sold、comments变一下就要整体失效、整体重建；
+    // 存成哈希后计数字段HINCRBY原地累加，读取时HMGET只取页面需要的字段，数据库异步批量写回
+
+    @Value("${hmdp.cache.shop-hash.enabled:false}")
+    private boolean shopHashEnabled;
+
+    // 允许按字段读取的店铺字段
+    private static final Set<String> SHOP_FIELDS = new HashSet<>(Arrays.asList(
+            "id", "name", "typeId", "images", "area", "address", "x", "y",
+            "avgPrice", "sold", "comments", "score", "openHours", "createTime", "updateTime"));
+
+    // 允许原地累加的计数字段
+    private static final Set<String> SHOP_COUNTER_FIELDS = new HashSet<>(Arrays.asList("sold", "comments"));
+
+    // 空值标记字段，店铺不存在时缓存它(解决缓存穿透)
+    private static final String SHOP_HASH_NULL_FIELD = "_null";
+
+    // 哈希存在才累加；不存在说明没缓存，下次加载时会从数据库读到最新值
+    private static final DefaultRedisScript<Long> HINCR_IF_EXISTS_SCRIPT;
+
+    static {
+        HINCR_IF_EXISTS_SCRIPT = new DefaultRedisScript<>();
+        HINCR_IF_EXISTS_SCRIPT.setScriptText(
+                "if (redis.call('exists', KEYS[1]) == 1) then\n" +
+                "    return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])\n" +
+                "end\n" +
+                "return 0"
+        );
+        HINCR_IF_EXISTS_SCRIPT.setResultType(Long.class);
+    }
+
+    // 还没写回数据库的计数增量：店铺id -> 增量
+    // 累加用merge、取出用remove，都是单个key上的原子操作，取出时不会丢掉并发的累加，写回后的店铺也不再占用内存
+    private final ConcurrentHashMap<Long, Long> soldDeltas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Long> commentsDeltas = new ConcurrentHashMap<>();
+
+    @Override
+    public Result queryShopFields(Long id, List<String> fields) {
+        // 1.校验字段
+        if (fields == null || fields.isEmpty()) {
+            return Result.fail("字段不能为空");
+        }
+        for (String field : fields) {
+            if (!SHOP_FIELDS.contains(field)) {
+                return Result.fail("不支持的字段：" + field);
+            }
+        }
+        // 2.HMGET只取需要的字段，额外带上空值标记和id用来判断是否命中
+        String key = CACHE_SHOP_HASH_KEY + id;
+        List<Object> hashKeys = new ArrayList<>(fields.size() + 2);
+        hashKeys.add(SHOP_HASH_NULL_FIELD);
+        hashKeys.add("id");
+        hashKeys.addAll(fields);
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(key, hashKeys);
+        Map<String, Object> picked = new HashMap<>();
+        if (values.get(0) != null) {
+            // 3.命中空值
+            return Result.fail("店铺不存在");
+        }
+        if (values.get(1) != null) {
+            // 4.命中
+            for (int i = 0; i < fields.size(); i++) {
+                picked.put(fields.get(i), values.get(i + 2));
+            }
+        } else {
+            // 5.未命中，整个店铺加载进哈希，再挑出需要的字段
+            Map<String, String> hash = loadShopHash(id);
+            if (hash == null) {
+                return Result.fail("店铺不存在");
+            }
+            for (String field : fields) {
+                picked.put(field, hash.get(field));
+            }
+        }
+        // 6.只填充需要的字段，其余为null，序列化时被忽略
+        return Result.ok(BeanUtil.fillBeanWithMap(picked, new Shop(), false));
+    }
+
+    private Shop queryShopHash(Long id) {
+        // 1.从redis查询整个哈希
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CACHE_SHOP_HASH_KEY + id);
+        if (!entries.isEmpty()) {
+            // 2.命中，空值返回null
+            return entries.containsKey(SHOP_HASH_NULL_FIELD) ? null : BeanUtil.fillBeanWithMap(entries, new Shop(), false);
+        }
+        // 3.未命中，查询数据库并写入哈希
+        Map<String, String> hash = loadShopHash(id);
+        return hash == null ? null : BeanUtil.fillBeanWithMap(hash, new Shop(), false);
+    }
+
+    private Map<String, String> loadShopHash(Long id) {
+        String key = CACHE_SHOP_HASH_KEY + id;
+        // 1.查询数据库(布隆过滤器判断一定不存在的不查库)
+        Shop shop = loadShop(id);
+        if (shop == null) {
+            // 2.不存在，缓存空值标记
+            stringRedisTemplate.opsForHash().put(key, SHOP_HASH_NULL_FIELD, "1");
+            stringRedisTemplate.expire(key, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        // 3.按字段写入哈希，时间转为 yyyy-MM-dd HH:mm:ss 字符串
+        // 计数字段取数据库的值：各节点内存中还没写回的增量(最多一个写回周期)不包含在内，哈希过期重建后对齐
+        Map<String, String> hash = new HashMap<>();
+        BeanUtil.beanToMap(shop, new HashMap<>(), CopyOptions.create().setIgnoreNullValue(true))
+                .forEach((field, value) -> {
+                    if (value != null && SHOP_FIELDS.contains(field)) {
+                        hash.put(field, value instanceof LocalDateTime
+                                ? LocalDateTimeUtil.formatNormal((LocalDateTime) value) : value.toString());
+                    }
+                });
+        // 4.带版本号写入，重建期间店铺被修改过(版本key更新)就放弃写入，不会用旧数据覆盖失效
+        long ttlMillis = cacheClient.ttlWithJitter(CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        cacheClient.setHashWithVersion(key, hash, shop.cacheVersion(), ttlMillis);
+        return hash;
+    }
+
+    @Override
+    public void incrShopCounter(Long shopId, String field, long delta) {
+        if (!SHOP_COUNTER_FIELDS.contains(field)) {
+            throw new IllegalArgumentException("不支持累加的字段：" + field);
+        }
+        // 在事务中(例如创建订单)，提交后再累加
+        afterCommit(() -> {
+            // 1.缓存中有这个店铺的哈希就原地累加
+            stringRedisTemplate.execute(HINCR_IF_EXISTS_SCRIPT,
+                    Collections.singletonList(CACHE_SHOP_HASH_KEY + shopId), field, String.valueOf(delta));
+            // 2.累加排行榜和店铺目录
+            shopLeaderboard.incr(shopId, field, delta);
+            if ("sold".equals(field)) {
+                shopCatalog.incrSold(shopId, delta);
+            }
+            // 3.增量先记在内存，定时批量写回数据库
+            ("sold".equals(field) ? soldDeltas : commentsDeltas).merge(shopId, delta, Long::sum);
+        });
+    }
+
+    // 在事务中时，事务提交后再执行；不在事务中直接执行
+    private static void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    // 定时把计数增量批量写回数据库
+    @Override
+    @Scheduled(fixedDelay = 5000)
+    @PreDestroy
+    public synchronized void flushShopCounters() {
+        // 1.取出增量，同一个店铺的两个计数合并成一条UPDATE
+        Map<Long, long[]> batch = new HashMap<>();
+        drainDeltas(soldDeltas, batch, 0);
+        drainDeltas(commentsDeltas, batch, 1);
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 2.JDBC批量执行
+        try {
+            executeBatch(batch.entrySet(), (sqlSession, e) -> sqlSession.getMapper(ShopMapper.class)
+                    .incrCounters(e.getKey(), e.getValue()[0], e.getValue()[1]));
+        } catch (Exception ex) {
+            // 3.写回失败，增量放回去，下次再写
+            log.error("店铺计数写回数据库失败，下次重试", ex);
+            batch.forEach((shopId, deltas) -> {
+                soldDeltas.merge(shopId, deltas[0], Long::sum);
+                commentsDeltas.merge(shopId, deltas[1], Long::sum);
+            });
+        }
+    }
+
+    // 逐个key原子地取出并移除增量
+    private static void drainDeltas(ConcurrentHashMap<Long, Long> deltas, Map<Long, long[]> batch, int index) {
+        for (Long shopId : deltas.keySet()) {
+            Long delta = deltas.remove(shopId);
+            if (delta != null && delta != 0) {
+                batch.computeIfAbsent(shopId, k -> new long[2])[index] = delta;
+            }
+        }
+    }
+
 }
@@ -1,21 +1,20 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.controller.ShopController;
+import com.hmdp.annotation.CacheableQuery;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.ShopTypeSnapshot;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
@@ -32,32 +31,78 @@ import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_TTL;
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private ShopTypeSnapshot shopTypeSnapshot;
+
+    @Override
+    public ShopTypeSnapshot.Snapshot currentSnapshot() {
+        return shopTypeSnapshot.current();
+    }
 
     @Override
     public Result queryTypeList() {
-        // 1.从 Redis 中查询商户类型缓存
-        String shopTypeJson = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
-
-        // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopTypeJson)) {
-            // 3.存在，直接转为 List 返回
-            List<ShopType> typeList = JSONUtil.toList(shopTypeJson, ShopType.class);
-            return Result.ok(typeList);
+        // 1.本地快照已经加载，直接返回
+        ShopTypeSnapshot.Snapshot snapshot = shopTypeSnapshot.current();
+        if (snapshot != null) {
+            return snapshot.getTypes().isEmpty() ? Result.fail("店铺类型不存在") : Result.ok(snapshot.getTypes());
         }
 
-        // 4.不存在，查询数据库
-        List<ShopType> typeList = query().orderByAsc("sort").list();
+        // 2.还没有加载成功，通过代理对象查询，走缓存
+        IShopTypeService proxy = (IShopTypeService) AopContext.currentProxy();
+        List<ShopType> typeList = proxy.listOrderBySort();
 
-        // 5.不存在，返回错误
+        // 3.不存在，返回错误
         if (typeList == null || typeList.isEmpty()) {
             return Result.fail("店铺类型不存在");
         }
 
-        // 6.存在，写入 Redis 缓存
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_TYPE_KEY, JSONUtil.toJsonStr(typeList),CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
-
-        // 7.返回
+        // 4.返回
         return Result.ok(typeList);
     }
+
+    @Override
+    @CacheableQuery(keyPrefix = CACHE_SHOP_TYPE_KEY, ttl = CACHE_SHOP_TYPE_TTL)
+    public List<ShopType> listOrderBySort() {
+        return query().orderByAsc("sort").list();
+    }
+
+    @Override
+    @Transactional
+    public Result saveShopType(ShopType shopType) {
+        save(shopType);
+        refreshAfterCommit();
+        return Result.ok(shopType.getId());
+    }
+
+    @Override
+    @Transactional
+    public Result updateShopType(ShopType shopType) {
+        if (shopType.getId() == null) {
+            return Result.fail("店铺类型id不能为空");
+        }
+        if (!updateById(shopType)) {
+            return Result.fail("店铺类型不存在");
+        }
+        refreshAfterCommit();
+        return Result.ok();
+    }
+
+    @Override
+    @Transactional
+    public Result deleteShopType(Long id) {
+        if (!removeById(id)) {
+            return Result.fail("店铺类型不存在");
+        }
+        refreshAfterCommit();
+        return Result.ok();
+    }
+
+    // 提交后推进版本号，所有节点重新加载快照
+    private void refreshAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shopTypeSnapshot.bumpVersion();
+            }
+        });
+    }
 }
@@ -0,0 +1,187 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.User;
+import com.hmdp.service.IUserProfileService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_PROFILE_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_PROFILE_TTL;
+
+/**
+ * <p>
+ *  用户公开资料的批量查询，两级缓存
+ *  1.本地缓存：短TTL，热门作者在多数请求里不访问网络
+ *  2.redis：每个用户一个哈希 cache:user:profile:{id}，本地未命中的用一个pipeline HMGET
+ *  3.数据库：redis也未命中的用一次 IN 查询，再用一个pipeline写回redis；数据库里没有的用户缓存空值标记(解决缓存穿透)
+ *  目前没有修改昵称、头像的接口，不做主动失效：修改后最多经过 redis TTL + 本地TTL 才能看到新资料
+ * </p>
+ */
+@Service
+public class UserProfileServiceImpl implements IUserProfileService {
+
+    // 空值标记字段，用户不存在时缓存它
+    private static final String NULL_FIELD = "_null";
+
+    // 哈希里的字段，id、空值标记用来判断是否命中
+    private static final String[] FIELDS = {"id", "nickName", "icon", NULL_FIELD};
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Value("${hmdp.user-profile.local-ttl-ms:60000}")
+    private long localTtlMillis;
+
+    @Value("${hmdp.user-profile.local-max-size:100000}")
+    private int localMaxSize;
+
+    private final ConcurrentHashMap<Long, LocalEntry> localCache = new ConcurrentHashMap<>();
+
+    @Override
+    public Map<Long, UserDTO> queryProfiles(Collection<Long> userIds) {
+        Map<Long, UserDTO> profiles = new HashMap<>(userIds.size() * 2);
+        if (userIds.isEmpty()) {
+            return profiles;
+        }
+        // 1.本地缓存
+        long now = System.currentTimeMillis();
+        List<Long> misses = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(userIds)) {
+            LocalEntry entry = localCache.get(id);
+            if (entry != null && entry.expireAt > now) {
+                // 本地缓存的空值不放进结果
+                if (entry.profile != null) {
+                    profiles.put(id, entry.profile);
+                }
+            } else {
+                misses.add(id);
+            }
+        }
+        if (misses.isEmpty()) {
+            return profiles;
+        }
+        // 2.redis，一个pipeline
+        List<Object> hashes = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : misses) {
+                conn.hMGet(CACHE_USER_PROFILE_KEY + id, FIELDS);
+            }
+            return null;
+        });
+        List<Long> dbMisses = new ArrayList<>();
+        for (int i = 0; i < misses.size(); i++) {
+            List<?> values = (List<?>) hashes.get(i);
+            if (values != null && values.get(3) != null) {
+                // 命中空值，用户不存在
+                putLocal(misses.get(i), null, now);
+                continue;
+            }
+            if (values == null || values.get(0) == null) {
+                dbMisses.add(misses.get(i));
+                continue;
+            }
+            UserDTO profile = new UserDTO();
+            profile.setId(misses.get(i));
+            profile.setNickName((String) values.get(1));
+            profile.setIcon((String) values.get(2));
+            putLocal(profile.getId(), profile, now);
+            profiles.put(profile.getId(), profile);
+        }
+        if (dbMisses.isEmpty()) {
+            return profiles;
+        }
+        // 3.数据库，一次IN查询，再写回redis
+        List<User> users = userService.query()
+                .select("id", "nick_name", "icon")
+                .in("id", dbMisses)
+                .list();
+        List<UserDTO> loaded = new ArrayList<>(users.size());
+        for (User user : users) {
+            UserDTO profile = new UserDTO();
+            profile.setId(user.getId());
+            profile.setNickName(user.getNickName());
+            profile.setIcon(user.getIcon());
+            putLocal(profile.getId(), profile, now);
+            profiles.put(profile.getId(), profile);
+            loaded.add(profile);
+        }
+        // 4.数据库里也没有的用户
+        List<Long> absent = new ArrayList<>();
+        for (Long id : dbMisses) {
+            if (!profiles.containsKey(id)) {
+                absent.add(id);
+                putLocal(id, null, now);
+            }
+        }
+        writeBack(loaded, absent);
+        return profiles;
+    }
+
+    // 写回资料，不存在的用户写入空值标记，一起走pipeline
+    private void writeBack(List<UserDTO> profiles, List<Long> absent) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (UserDTO profile : profiles) {
+                String key = CACHE_USER_PROFILE_KEY + profile.getId();
+                Map<String, String> hash = new HashMap<>(4);
+                hash.put("id", profile.getId().toString());
+                hash.put("nickName", profile.getNickName() == null ? "" : profile.getNickName());
+                hash.put("icon", profile.getIcon() == null ? "" : profile.getIcon());
+                conn.hMSet(key, hash);
+                conn.pExpire(key, cacheClient.ttlWithJitter(CACHE_USER_PROFILE_TTL, TimeUnit.MINUTES));
+            }
+            for (Long id : absent) {
+                String key = CACHE_USER_PROFILE_KEY + id;
+                conn.hSet(key, NULL_FIELD, "1");
+                conn.pExpire(key, TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL));
+            }
+            return null;
+        });
+    }
+
+    // 本地缓存满了先清理过期的，还是满的就整个清空；profile为null表示用户不存在
+    private void putLocal(Long id, UserDTO profile, long now) {
+        if (localCache.size() >= localMaxSize) {
+            localCache.values().removeIf(e -> e.expireAt <= now);
+            if (localCache.size() >= localMaxSize) {
+                localCache.clear();
+            }
+        }
+        localCache.put(id, new LocalEntry(profile, now + localTtlMillis));
+    }
+
+    private static class LocalEntry {
+        // 用户不存在时为null
+        private final UserDTO profile;
+        private final long expireAt;
+
+        private LocalEntry(UserDTO profile, long expireAt) {
+            this.profile = profile;
+            this.expireAt = expireAt;
+        }
+    }
+}
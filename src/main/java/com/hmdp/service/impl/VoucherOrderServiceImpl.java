@@ -2,10 +2,13 @@ package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.entity.Voucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
 import com.hmdp.utils.UserHolder;
@@ -54,6 +57,12 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private IVoucherService voucherService;
+
+    @Resource
+    private IShopService shopService;
+
     /**
      * 秒杀优化23：基于 lua 脚本判断库存是否充足以及用户是否下过订单
      */
@@ -449,5 +458,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
         // 7.创建订单
         save(voucherOrder);
+        // 8.店铺销量+1(事务提交后缓存中原地累加，数据库异步批量写回)
+        Voucher voucher = voucherService.getById(voucherOrder.getVoucherId());
+        if (voucher != null) {
+            shopService.incrShopCounter(voucher.getShopId(), "sold", 1);
+        }
     }
 }
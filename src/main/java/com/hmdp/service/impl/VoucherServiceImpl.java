@@ -1,19 +1,26 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.annotation.CacheEvictQuery;
+import com.hmdp.annotation.CacheableQuery;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import org.springframework.aop.framework.AopContext;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_TTL;
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
@@ -35,14 +42,66 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
-        // 返回结果
-        return Result.ok(vouchers);
+        // 1.查询优惠券目录(通过代理对象，走缓存)
+        IVoucherService proxy = (IVoucherService) AopContext.currentProxy();
+        List<Voucher> vouchers = proxy.listVoucherOfShop(shopId);
+        if (vouchers == null || vouchers.isEmpty()) {
+            return Result.ok(vouchers);
+        }
+        // 2.秒杀券的库存用redis里的实时库存覆盖，一次MGET
+        List<String> keys = new ArrayList<>();
+        for (Voucher voucher : vouchers) {
+            if (isSeckill(voucher)) {
+                keys.add(SECKILL_STOCK_KEY + voucher.getId());
+            }
+        }
+        if (keys.isEmpty()) {
+            return Result.ok(vouchers);
+        }
+        List<String> stocks = stringRedisTemplate.opsForValue().multiGet(keys);
+        // 3.目录里的对象可能被多个请求共享(热点key钉在本地缓存)，复制一份再覆盖
+        List<Voucher> result = new ArrayList<>(vouchers.size());
+        int i = 0;
+        for (Voucher voucher : vouchers) {
+            if (!isSeckill(voucher)) {
+                result.add(voucher);
+                continue;
+            }
+            String stock = stocks == null ? null : stocks.get(i);
+            i++;
+            if (stock == null) {
+                // redis里没有库存(还没预热或者已经清理)，用目录里的库存
+                result.add(voucher);
+                continue;
+            }
+            Voucher copy = BeanUtil.copyProperties(voucher, Voucher.class);
+            copy.setStock(Integer.valueOf(stock));
+            result.add(copy);
+        }
+        // 4.返回结果
+        return Result.ok(result);
+    }
+
+    // 关联了秒杀信息的优惠券
+    private static boolean isSeckill(Voucher voucher) {
+        return voucher.getBeginTime() != null;
+    }
+
+    @Override
+    @CacheableQuery(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#shopId", ttl = CACHE_VOUCHER_SHOP_TTL)
+    public List<Voucher> listVoucherOfShop(Long shopId) {
+        return getBaseMapper().queryVoucherOfShop(shopId);
+    }
+
+    @Override
+    @CacheEvictQuery(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#voucher.shopId")
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
     }
 
     @Override
     @Transactional
+    @CacheEvictQuery(keyPrefix = CACHE_VOUCHER_SHOP_KEY, key = "#voucher.shopId")
     public void addSeckillVoucher(Voucher voucher) {
         // 保存优惠券
         save(voucher);
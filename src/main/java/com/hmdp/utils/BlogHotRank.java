@@ -0,0 +1,215 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Blog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_EPOCH_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+
+/**
+ * 热门博文排行：一个按时间衰减热度排序的ZSET blog:hot，member是博文id
+ * 1.热度 = Σ 权重 * e^((事件时间 - 基准时间) / τ)，事件是发布、点赞、评论；越新的事件分量越重，等价于旧的热度按半衰期衰减
+ * 2.增量：发布、评论时ZINCRBY，点赞在点赞脚本里一起更新，取消点赞减去当初加上的热度；都在Lua里读基准时间，和衰减不会交错
+ * 3.衰减：BlogHotDecayJob定时把基准时间推进到当前时间并整体缩放分数，排名不变、分数不会溢出，同时裁剪到固定篇数
+ * 4.ZSET不存在(首次启动、redis被清空)时由BlogHotDecayJob从数据库构建；点赞集合里的赞按点赞时间计算，
+ *   和点赞脚本加上的一致，取消点赞时正好减掉，热度不会变成负数
+ */
+@Component
+public class BlogHotRank {
+
+    private static final DefaultRedisScript<Long> INCR_SCRIPT;
+    private static final DefaultRedisScript<Long> REBASE_SCRIPT;
+
+    static {
+        INCR_SCRIPT = new DefaultRedisScript<>();
+        INCR_SCRIPT.setLocation(new ClassPathResource("blog_hot_incr.lua"));
+        INCR_SCRIPT.setResultType(Long.class);
+
+        REBASE_SCRIPT = new DefaultRedisScript<>();
+        REBASE_SCRIPT.setLocation(new ClassPathResource("blog_hot_rebase.lua"));
+        REBASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final String BUILDING_SUFFIX = ":building";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.blog.hot.create-weight:5}")
+    private double createWeight;
+
+    @Value("${hmdp.blog.hot.like-weight:1}")
+    private double likeWeight;
+
+    @Value("${hmdp.blog.hot.comment-weight:3}")
+    private double commentWeight;
+
+    @Value("${hmdp.blog.hot.half-life-hours:24}")
+    private double halfLifeHours;
+
+    @Value("${hmdp.blog.hot.size:1000}")
+    private int size;
+
+    // 衰减时间常数τ(秒) = 半衰期 / ln2
+    private double tauSeconds;
+
+    public BlogHotRank(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        tauSeconds = halfLifeHours * 3600 / Math.log(2);
+    }
+
+    /**
+     * 是否已经从数据库构建过(有基准时间)，没有时调用方退化为数据库排序
+     */
+    public boolean built() {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_HOT_EPOCH_KEY));
+    }
+
+    /**
+     * 第 from ~ end-1 名的博文id
+     */
+    public List<Long> page(int from, int end) {
+        Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, from, end - 1);
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            ids.add(Long.valueOf(member));
+        }
+        return ids;
+    }
+
+    /**
+     * 点赞脚本的参数：点赞集合、热度ZSET、基准时间三个key
+     */
+    public List<String> likeKeys(Long blogId) {
+        return Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY);
+    }
+
+    /**
+     * 点赞脚本的参数：博文id、一个赞的权重、τ
+     */
+    public String[] likeArgs(Long userId, long nowMillis, Long blogId) {
+        return new String[]{userId.toString(), String.valueOf(nowMillis), blogId.toString(),
+                String.valueOf(likeWeight), String.valueOf(tauSeconds)};
+    }
+
+    public void onCreate(Long blogId) {
+        incr(blogId, createWeight);
+    }
+
+    public void onComment(Long blogId) {
+        incr(blogId, commentWeight);
+    }
+
+    /**
+     * 移除已经不存在的博文
+     */
+    public void remove(Collection<Long> blogIds) {
+        if (!blogIds.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(BLOG_HOT_KEY, blogIds.stream().map(String::valueOf).toArray());
+        }
+    }
+
+    /**
+     * 衰减：推进基准时间，整体缩放分数并裁剪
+     */
+    public void decay() {
+        stringRedisTemplate.execute(REBASE_SCRIPT, Arrays.asList(BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY),
+                String.valueOf(System.currentTimeMillis() / 1000), String.valueOf(tauSeconds), String.valueOf(size));
+    }
+
+    /**
+     * 从数据库构建：写入一批博文到临时key
+     * 点赞集合里的赞按点赞时间计算(和点赞脚本加上的一样，取消点赞时正好减掉)，数据库里多出来的赞和评论按发布时间计算
+     * @param epochSeconds 这次构建的基准时间
+     */
+    @SuppressWarnings("unchecked")
+    public void stage(List<Blog> blogs, long epochSeconds) {
+        // 1.一次管道读出这批博文的点赞集合
+        List<Object> likedSets = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                conn.zRangeWithScores(BLOG_LIKED_KEY + blog.getId(), 0, -1);
+            }
+            return null;
+        });
+        // 2.计算热度，写入临时key
+        String key = BLOG_HOT_KEY + BUILDING_SUFFIX;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < blogs.size(); i++) {
+                Blog blog = blogs.get(i);
+                Set<ZSetOperations.TypedTuple<String>> likes = (Set<ZSetOperations.TypedTuple<String>>) likedSets.get(i);
+                long createSeconds = blog.getCreateTime().atZone(ZoneId.systemDefault()).toEpochSecond();
+                double atCreate = Math.exp((createSeconds - epochSeconds) / tauSeconds);
+                double score = 0;
+                int inSet = 0;
+                if (likes != null) {
+                    for (ZSetOperations.TypedTuple<String> like : likes) {
+                        if (like.getScore() != null) {
+                            score += likeWeight * Math.exp((like.getScore() / 1000 - epochSeconds) / tauSeconds);
+                            inSet++;
+                        }
+                    }
+                }
+                long liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                score += (createWeight
+                        + likeWeight * Math.max(liked - inSet, 0)
+                        + commentWeight * (blog.getComments() == null ? 0 : blog.getComments())) * atCreate;
+                conn.zAdd(key, score, blog.getId().toString());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 从数据库构建：临时key替换正式的ZSET，同时写入基准时间；一篇都没有时也写入基准时间，之后的增量就能生效
+     */
+    public void commit(long epochSeconds) {
+        String building = BLOG_HOT_KEY + BUILDING_SUFFIX;
+        boolean staged = Boolean.TRUE.equals(stringRedisTemplate.hasKey(building));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            if (staged) {
+                conn.rename(building, BLOG_HOT_KEY);
+            }
+            conn.set(BLOG_HOT_EPOCH_KEY, String.valueOf(epochSeconds));
+            return null;
+        });
+        decay();
+    }
+
+    /**
+     * 从数据库构建失败，丢弃临时key
+     */
+    public void abort() {
+        stringRedisTemplate.delete(BLOG_HOT_KEY + BUILDING_SUFFIX);
+    }
+
+    private void incr(Long blogId, double weight) {
+        stringRedisTemplate.execute(INCR_SCRIPT, Arrays.asList(BLOG_HOT_KEY, BLOG_HOT_EPOCH_KEY),
+                blogId.toString(), String.valueOf(weight), String.valueOf(System.currentTimeMillis() / 1000), String.valueOf(tauSeconds));
+    }
+}
@@ -3,70 +3,283 @@ package com.hmdp.utils;
 // 数据库查询本身不知道怎么查，调用者告诉我们怎么查，查数据库是一段函数，所以传入函数，函数式编程，根据ID查返回查询结果，有参有返回值，对应function，指定参数和返回值类型，调用时就是getByID
 import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSON;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.lang.reflect.Type;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_VERSION_TTL;
 
 @Slf4j
 @Component
 public class CacheClient {
     private final StringRedisTemplate stringRedisTemplate;
 
-    // 1. 定义线程池 (之前代码里漏了这个)
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    // 全局共享的缓存重建调度器(有界、按key去重、按热度排队)
+    private final CacheRebuildExecutor rebuildExecutor;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    // 同一JVM内并发未命中的请求合并为一次重建
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    // 没抢到分布式锁时(其他节点在重建)，leader再次检查缓存的间隔
+    private static final long MUTEX_RETRY_INTERVAL_MILLIS = 50L;
+
+    // XFetch的beta，大于1更积极地提前刷新，小于1更保守
+    private static final double EARLY_REFRESH_BETA = 1.0;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    // 晋升后的热点key钉在本地缓存，不再访问redis；由refreshHotKeys定时与redis同步并提前刷新
+    private final ConcurrentHashMap<String, HotKeyEntry> hotKeyCache = new ConcurrentHashMap<>();
+
+    // 热点key距离逻辑过期不足这个时间(秒)时提前刷新
+    private static final long HOT_KEY_REFRESH_AHEAD_SECONDS = 2L;
+
+    // 所有回源数据库的调用都经过舱壁和熔断器
+    private final DbBulkhead dbBulkhead;
+
+    // 按key前缀统计命中、未命中、锁竞争和重建耗时
+    private final CacheMetrics cacheMetrics;
+
+    // 失效、删除缓存后广播给所有节点
+    private final CacheEvictBus cacheEvictBus;
+
+    // TTL随机抖动比例：在原TTL基础上随机增加0~ttlJitter倍，一起写入的key不会一起过期
+    @Value("${hmdp.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    // 事务提交后延迟多久再失效一次
+    @Value("${hmdp.cache.invalidate-delay-ms:500}")
+    private long invalidateDelayMillis;
+
+    private static final int INVALIDATE_MAX_RETRIES = 3;
+
+    // 延迟失效、失效重试用的调度线程
+    private static final ScheduledExecutorService INVALIDATE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "cache-invalidate");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 版本key = 缓存key + 后缀
+    private static final String VERSION_KEY_SUFFIX = ":ver";
+
+    private static final DefaultRedisScript<Long> SET_VERSIONED_SCRIPT;
+    private static final DefaultRedisScript<Long> INVALIDATE_SCRIPT;
+    private static final DefaultRedisScript<Long> HSET_VERSIONED_SCRIPT;
+
+    static {
+        SET_VERSIONED_SCRIPT = new DefaultRedisScript<>();
+        SET_VERSIONED_SCRIPT.setLocation(new ClassPathResource("cache_set_versioned.lua"));
+        SET_VERSIONED_SCRIPT.setResultType(Long.class);
+
+        INVALIDATE_SCRIPT = new DefaultRedisScript<>();
+        INVALIDATE_SCRIPT.setLocation(new ClassPathResource("cache_invalidate.lua"));
+        INVALIDATE_SCRIPT.setResultType(Long.class);
+
+        HSET_VERSIONED_SCRIPT = new DefaultRedisScript<>();
+        HSET_VERSIONED_SCRIPT.setLocation(new ClassPathResource("cache_hset_versioned.lua"));
+        HSET_VERSIONED_SCRIPT.setResultType(Long.class);
+    }
+
+    // 批量预热时逻辑过期时间错开的窗口，占TTL的比例
+    @Value("${hmdp.cache.warm-up-stagger:0.5}")
+    private double warmUpStagger;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, HotKeyDetector hotKeyDetector,
+                       CacheRebuildExecutor rebuildExecutor, DbBulkhead dbBulkhead, CacheMetrics cacheMetrics,
+                       CacheEvictBus cacheEvictBus) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.hotKeyDetector = hotKeyDetector;
+        this.rebuildExecutor = rebuildExecutor;
+        this.dbBulkhead = dbBulkhead;
+        this.cacheMetrics = cacheMetrics;
+        this.cacheEvictBus = cacheEvictBus;
+        // 其他节点失效的key，本节点钉住的热点key也要取消
+        cacheEvictBus.subscribe(hotKeyCache::remove);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        write(key, value, JSONUtil.toJsonStr(value), jitter(unit.toMillis(time)));
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         // 设置逻辑过期
         RedisData redisData = new RedisData();
         redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        redisData.setExpireTime(LocalDateTime.now().plus(jitter(unit.toMillis(time)), ChronoUnit.MILLIS));
         // 写入redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        write(key, value, JSONUtil.toJsonStr(redisData), 0L);
+    }
+
+    /**
+     * 带版本号整体写入哈希缓存，和 invalidate 共用版本key：数据已经更新过(版本key更新)时放弃写入
+     * @return 是否写入
+     */
+    public boolean setHashWithVersion(String key, Map<String, String> hash, long version, long ttlMillis) {
+        List<String> args = new ArrayList<>(3 + hash.size() * 2);
+        args.add(String.valueOf(version));
+        args.add(String.valueOf(ttlMillis));
+        args.add(String.valueOf(versionTtlMillis(ttlMillis)));
+        hash.forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+        Long ok = stringRedisTemplate.execute(HSET_VERSIONED_SCRIPT, Arrays.asList(key, key + VERSION_KEY_SUFFIX), args.toArray());
+        if (ok != null && ok == 0L) {
+            log.debug("缓存中已有更新的版本，放弃写入, key={}, version={}", key, version);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 热点key写回redis：逻辑过期格式，物理TTL按这个key原来的查询方式决定
+     * 1.逻辑过期方式：和 setWithLogicalExpire、预热一样不设物理TTL，它在redis未命中时不回源，key被删掉就查不到了
+     * 2.PASS_THROUGH / MUTEX 等不看逻辑过期时间的方式：保留原来的物理TTL，否则取消钉住后永远不会过期
+     */
+    private void pinWithLogicalExpire(String key, Object value, Long time, TimeUnit unit, boolean logicalExpire) {
+        long ttlMillis = jitter(unit.toMillis(time));
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plus(ttlMillis, ChronoUnit.MILLIS));
+        write(key, value, JSONUtil.toJsonStr(redisData), logicalExpire ? 0L : ttlMillis);
+    }
+
+    /**
+     * 批量预热(逻辑过期)：逻辑过期时间在 [time, time * (1 + warmUpStagger)] 内按顺序均匀错开，
+     * 同一批预热的key不会在同一时刻过期、一起回源；写入走pipeline
+     */
+    public void setWithLogicalExpireBatch(Map<String, ?> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        long ttlMillis = unit.toMillis(time);
+        long staggerMillis = (long) (ttlMillis * warmUpStagger);
+        int size = values.size();
+        LocalDateTime now = LocalDateTime.now();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            int i = 0;
+            for (Map.Entry<String, ?> e : values.entrySet()) {
+                RedisData redisData = new RedisData();
+                redisData.setData(e.getValue());
+                redisData.setExpireTime(now.plus(ttlMillis + staggerMillis * i / size, ChronoUnit.MILLIS));
+                String json = JSONUtil.toJsonStr(redisData);
+                if (e.getValue() instanceof Versioned) {
+                    long version = ((Versioned) e.getValue()).cacheVersion();
+                    conn.eval(SET_VERSIONED_SCRIPT.getScriptAsString(), ReturnType.INTEGER, 2,
+                            e.getKey(), e.getKey() + VERSION_KEY_SUFFIX, String.valueOf(version), json,
+                            "0", String.valueOf(versionTtlMillis(0L)));
+                } else {
+                    conn.set(e.getKey(), json);
+                }
+                i++;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 批量读取缓存，一次MGET；兼容逻辑过期格式和直接存储的对象，逻辑过期了的旧数据同样返回
+     * @return 命中的数据，空值和未命中的id不在结果中，由调用方批量回源
+     */
+    public <R, ID> Map<ID, R> multiGet(String keyPrefix, Collection<ID> ids, Type type) {
+        List<ID> idList = new ArrayList<>(ids);
+        List<String> keys = new ArrayList<>(idList.size());
+        for (ID id : idList) {
+            keys.add(keyPrefix + id);
+        }
+        List<String> jsons = stringRedisTemplate.opsForValue().multiGet(keys);
+        Map<ID, R> result = new HashMap<>(idList.size() * 2);
+        for (int i = 0; i < idList.size(); i++) {
+            String json = jsons == null ? null : jsons.get(i);
+            if (StrUtil.isNotBlank(json)) {
+                cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+                result.put(idList.get(i), toValue(json, type));
+            } else {
+                cacheMetrics.request(keyPrefix, json == null ? CacheMetrics.MISS : CacheMetrics.NULL_HIT);
+            }
+        }
+        return result;
     }
 
     // 方法1：解决缓存穿透
     public <R, ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return queryWithPassThrough(keyPrefix, id, (Type) type, dbFallback, time, unit);
+    }
+
+    public <R, ID> R queryWithPassThrough(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        try {
+            return doQueryWithPassThrough(keyPrefix, id, type, dbFallback, time, unit);
+        } finally {
+            cacheMetrics.queryLatency(keyPrefix, "pass_through", System.nanoTime() - begin);
+        }
+    }
+
+    private <R, ID> R doQueryWithPassThrough(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 热点key直接走本地缓存
+        if (hotKeyDetector.record(key)) {
+            return queryHotKey(keyPrefix, key, id, type, dbFallback, time, unit, false);
+        }
         // 1.从redis查询缓存
         String json = stringRedisTemplate.opsForValue().get(key);
 
         // 2.判断是否存在
         if (StrUtil.isNotBlank(json)) {
             // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+            return toValue(json, type);
         }
 
         // 判断是否为空值 (解决缓存穿透)
         if (json != null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
             return null;
         }
+        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
 
         // 4.不存在，根据id查询数据库
-        R r = dbFallback.apply(id);
+        R r = loadFromDb(key, dbFallback, id);
 
         // 5.不存在，返回错误
         if (r == null) {
             // 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(key);
             return null;
         }
 
@@ -76,62 +289,177 @@ public class CacheClient {
         return r;
     }
 
+    // 方法3：解决缓存击穿 (互斥锁 + 单飞)
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return queryWithMutex(keyPrefix, id, (Type) type, dbFallback, time, unit);
+    }
+
+    public <R, ID> R queryWithMutex(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        try {
+            return doQueryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
+        } finally {
+            cacheMetrics.queryLatency(keyPrefix, "mutex", System.nanoTime() - begin);
+        }
+    }
+
+    private <R, ID> R doQueryWithMutex(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 热点key直接走本地缓存
+        if (hotKeyDetector.record(key)) {
+            return queryHotKey(keyPrefix, key, id, type, dbFallback, time, unit, false);
+        }
+        // 1.从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+
+        // 2.判断是否存在
+        if (StrUtil.isNotBlank(json)) {
+            // 3.存在，直接返回
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+            return toValue(json, type);
+        }
+
+        // 判断是否为空值 (解决缓存穿透)
+        if (json != null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
+            return null;
+        }
+        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+
+        // 4.未命中，同一个key的并发请求共享同一次重建
+        // 只有leader去抢分布式锁、查数据库，其余线程在future上等结果，不再休眠轮询
+        return singleFlight.execute(key, () -> loadWithMutex(key,
+                cached -> cached.isEmpty() ? null : toValue(cached, type),
+                () -> {
+                    // 查询数据库
+                    R r = loadFromDb(key, dbFallback, id);
+                    // 不存在，将空值写入redis；存在，写入redis
+                    if (r == null) {
+                        setNull(key);
+                    } else {
+                        this.set(key, r, time, unit);
+                    }
+                    return r;
+                }));
+    }
+
+    /**
+     * 在分布式锁的保护下重建缓存
+     * @param decoder 把缓存中的字符串还原成对象（空串代表空值缓存）
+     * @param rebuild 查询数据库并写回缓存
+     */
+    private <R> R loadWithMutex(String key, Function<String, R> decoder, Supplier<R> rebuild) {
+        String lockKey = "lock:" + key;
+        while (true) {
+            // 1.获取互斥锁
+            if (tryLock(lockKey)) {
+                try {
+                    // 2.Double Check：拿到锁的瞬间，其他节点可能刚重建完
+                    String json = stringRedisTemplate.opsForValue().get(key);
+                    if (json != null) {
+                        return decoder.apply(json);
+                    }
+                    // 3.查询数据库并写入redis
+                    return rebuild.get();
+                } finally {
+                    // 4.释放锁
+                    unlock(lockKey);
+                }
+            }
+
+            // 5.锁被其他节点持有，只有leader在这里等待，等待后先看缓存是否已经被重建
+            cacheMetrics.lockContention(cacheMetrics.keyspaceOf(key));
+            // 锁本身有过期时间，所以这里不会无限等待
+            try {
+                Thread.sleep(MUTEX_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            String json = stringRedisTemplate.opsForValue().get(key);
+            if (json != null) {
+                return decoder.apply(json);
+            }
+        }
+    }
+
     // 方法2：解决缓存击穿 (逻辑过期)
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return queryWithLogicalExpire(keyPrefix, id, (Type) type, dbFallback, time, unit);
+    }
+
+    public <R, ID> R queryWithLogicalExpire(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        try {
+            return doQueryWithLogicalExpire(keyPrefix, id, type, dbFallback, time, unit);
+        } finally {
+            cacheMetrics.queryLatency(keyPrefix, "logical_expire", System.nanoTime() - begin);
+        }
+    }
+
+    private <R, ID> R doQueryWithLogicalExpire(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 热点key直接走本地缓存
+        if (hotKeyDetector.record(key)) {
+            return queryHotKey(keyPrefix, key, id, type, dbFallback, time, unit, true);
+        }
         // 1.从redis查询缓存
         String json = stringRedisTemplate.opsForValue().get(key);
 
         // 2.判断是否存在
         if (StrUtil.isBlank(json)) {
             // 3.不存在，返回null (逻辑过期前提是Redis里必须有数据)
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
             return null;
         }
 
         // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        RedisData redisData = readRedisData(json);
+        R r = toData(redisData, type);
         LocalDateTime expireTime = redisData.getExpireTime();
 
-        // 5.判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        // 5.判断是否过期 (没有逻辑过期时间的旧格式数据当作已过期，重建时转成逻辑过期格式)
+        if (expireTime != null && expireTime.isAfter(LocalDateTime.now())) {
             // 5.1未过期，直接返回信息
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
             return r;
         }
+        cacheMetrics.request(keyPrefix, CacheMetrics.STALE);
 
         // 5.2已过期，需要缓存重建
         // 6.缓存重建
         // 6.1获取互斥锁 (使用通用的锁名称)
         String lockKey = "lock:" + key;
         boolean isLock = tryLock(lockKey);
+        if (!isLock) {
+            cacheMetrics.lockContention(keyPrefix);
+        }
 
         // 6.2判断是否获取成功
         if (isLock) {
             // Double Check (再次检查Redis)
             String newJson = stringRedisTemplate.opsForValue().get(key);
             if (StrUtil.isNotBlank(newJson)) {
-                RedisData newRedisData = JSONUtil.toBean(newJson, RedisData.class);
-                if (newRedisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                RedisData newRedisData = readRedisData(newJson);
+                if (newRedisData.getExpireTime() != null && newRedisData.getExpireTime().isAfter(LocalDateTime.now())) {
                     // 如果别人已经重建好了，直接返回
                     unlock(lockKey);
-                    return JSONUtil.toBean((JSONObject) newRedisData.getData(), type);
+                    return toData(newRedisData, type);
                 }
             }
 
-            // 6.3成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 查询数据库
-                    R newR = dbFallback.apply(id);
-                    // 重建缓存 (调用 setWithLogicalExpire)
-                    this.setWithLogicalExpire(key, newR, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
+            // 6.3成功，交给重建调度器异步重建
+            submitRebuild(key, lockKey, () -> {
+                // 查询数据库
+                R newR = loadFromDb(key, dbFallback, id);
+                // 重建缓存 (调用 setWithLogicalExpire)
+                this.setWithLogicalExpire(key, newR, time, unit);
             });
         }
 
@@ -139,6 +467,388 @@ public class CacheClient {
         return r;
     }
 
+    // 方法4：解决缓存击穿 (概率提前刷新 XFetch)
+    // 值旁边存一份重建耗时delta，越接近过期，触发刷新的概率越高；热点key在真正过期前就会被某一个请求刷新掉
+    public <R, ID> R queryWithEarlyRefresh(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        return queryWithEarlyRefresh(keyPrefix, id, (Type) type, dbFallback, time, unit);
+    }
+
+    public <R, ID> R queryWithEarlyRefresh(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.nanoTime();
+        try {
+            return doQueryWithEarlyRefresh(keyPrefix, id, type, dbFallback, time, unit);
+        } finally {
+            cacheMetrics.queryLatency(keyPrefix, "early_refresh", System.nanoTime() - begin);
+        }
+    }
+
+    private <R, ID> R doQueryWithEarlyRefresh(
+            String keyPrefix, ID id, Type type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 热点key直接走本地缓存
+        if (hotKeyDetector.record(key)) {
+            return queryHotKey(keyPrefix, key, id, type, dbFallback, time, unit, false);
+        }
+        // 1.从redis查询缓存
+        String json = stringRedisTemplate.opsForValue().get(key);
+
+        // 2.未命中，走互斥重建（同一JVM内单飞），同时记录重建耗时
+        if (json == null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+            return singleFlight.execute(key, () -> loadWithMutex(key,
+                    cached -> decodeEarlyRefresh(cached, type),
+                    () -> rebuildWithEarlyRefresh(key, id, dbFallback, time, unit)));
+        }
+
+        // 3.命中空值 (解决缓存穿透)
+        if (json.isEmpty()) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.NULL_HIT);
+            return null;
+        }
+
+        // 4.命中，判断是否需要提前刷新
+        RedisData redisData = readRedisData(json);
+        R r = toData(redisData, type);
+        if (!shouldRefreshEarly(redisData)) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+            return r;
+        }
+        cacheMetrics.request(keyPrefix, CacheMetrics.EARLY_REFRESH);
+
+        // 5.这次请求"中签"了，抢到锁的那一个请求负责异步刷新，其余请求照常返回当前值
+        String lockKey = "lock:" + key;
+        if (tryLock(lockKey)) {
+            submitRebuild(key, lockKey, () -> rebuildWithEarlyRefresh(key, id, dbFallback, time, unit));
+        } else {
+            cacheMetrics.lockContention(keyPrefix);
+        }
+        return r;
+    }
+
+    public void setWithEarlyRefresh(String key, Object value, long deltaMillis, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        long ttlMillis = jitter(unit.toMillis(time));
+        redisData.setExpireTime(LocalDateTime.now().plus(ttlMillis, ChronoUnit.MILLIS));
+        redisData.setDelta(deltaMillis);
+        // 物理过期时间和逻辑过期时间一致，真正过期后退化为一次互斥重建
+        write(key, value, JSONUtil.toJsonStr(redisData), ttlMillis);
+    }
+
+    private <R, ID> R rebuildWithEarlyRefresh(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        // 1.查询数据库，并记录重建耗时
+        long begin = System.currentTimeMillis();
+        R r = loadFromDb(key, dbFallback, id);
+        long delta = System.currentTimeMillis() - begin;
+        // 2.不存在，将空值写入redis
+        if (r == null) {
+            setNull(key);
+            return null;
+        }
+        // 3.存在，连同重建耗时一起写入redis
+        this.setWithEarlyRefresh(key, r, delta, time, unit);
+        return r;
+    }
+
+    private static <R> R decodeEarlyRefresh(String json, Type type) {
+        return json.isEmpty() ? null : toValue(json, type);
+    }
+
+    /**
+     * XFetch：now - delta * beta * ln(rand) >= expireTime 时提前刷新
+     * rand在(0,1]之间，ln(rand)<=0，所以离过期越近、重建越慢，越容易触发
+     */
+    private static boolean shouldRefreshEarly(RedisData redisData) {
+        LocalDateTime expireTime = redisData.getExpireTime();
+        if (expireTime == null) {
+            return false;
+        }
+        long delta = redisData.getDelta() == null ? 0L : redisData.getDelta();
+        double rand = 1.0 - ThreadLocalRandom.current().nextDouble();
+        long gapMillis = (long) (-delta * EARLY_REFRESH_BETA * Math.log(rand));
+        return !LocalDateTime.now().plus(gapMillis, ChronoUnit.MILLIS).isBefore(expireTime);
+    }
+
+    /**
+     * 数据更新后失效缓存：事务提交后把版本key推进到新版本并删除缓存，之后基于旧数据的重建都会被拒绝写入；
+     * 再延迟一段时间重复执行一次(失败会重试)，兜住提交前后已经读到旧数据、还没来得及写的重建
+     * @param version 更新后的数据版本号
+     */
+    public void invalidate(String key, long version) {
+        Runnable task = () -> invalidateWithRetry(key, version, 0, 0L);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 在事务中，等提交后再失效，否则其他线程可能在提交前又把旧数据读回缓存
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    private void invalidateWithRetry(String key, long version, int attempt, long delayMillis) {
+        Runnable invalidation = () -> {
+            try {
+                stringRedisTemplate.execute(INVALIDATE_SCRIPT, Arrays.asList(key, key + VERSION_KEY_SUFFIX),
+                        String.valueOf(version), String.valueOf(versionTtlMillis(0L)));
+                cacheEvictBus.publish(key);
+                // 第一次成功后，延迟再执行一次
+                if (attempt == 0) {
+                    invalidateWithRetry(key, version, 1, invalidateDelayMillis);
+                }
+            } catch (Exception e) {
+                if (attempt >= INVALIDATE_MAX_RETRIES) {
+                    log.error("缓存失效失败, key={}, version={}", key, version, e);
+                    return;
+                }
+                log.warn("缓存失效失败，稍后重试, key={}, attempt={}", key, attempt);
+                invalidateWithRetry(key, version, attempt + 1, invalidateDelayMillis << attempt);
+            }
+        };
+        if (delayMillis <= 0) {
+            invalidation.run();
+        } else {
+            INVALIDATE_SCHEDULER.schedule(invalidation, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 删除缓存，同时取消所有节点本地钉住的热点key和响应缓存
+     */
+    public void evict(String key) {
+        stringRedisTemplate.delete(key);
+        cacheEvictBus.publish(key);
+    }
+
+    // 热点key：钉在本地缓存，切换为逻辑过期，由定时任务提前刷新
+    // 注意：本地缓存里的对象是多个请求共享的，调用方不要修改它
+    @SuppressWarnings("unchecked")
+    // logicalExpire：调用方是否是逻辑过期方式，决定写回redis时的物理TTL
+    private <R, ID> R queryHotKey(String keyPrefix, String key, ID id, Type type, Function<ID, R> dbFallback,
+                                  Long time, TimeUnit unit, boolean logicalExpire) {
+        // 1.已经钉在本地缓存，直接返回
+        HotKeyEntry entry = hotKeyCache.get(key);
+        if (entry != null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.L1_HIT);
+            return (R) entry.value;
+        }
+        cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+        // 2.刚晋升为热点key，同一JVM只加载一次
+        return singleFlight.execute("hot:" + key, () -> promote(key, id, type, dbFallback, time, unit, logicalExpire));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, ID> R promote(String key, ID id, Type type, Function<ID, R> dbFallback,
+                              Long time, TimeUnit unit, boolean logicalExpire) {
+        HotKeyEntry entry = new HotKeyEntry(type, unit.toSeconds(time));
+        // 从数据库重新加载并以逻辑过期格式写回redis，数据不存在了就取消钉住
+        entry.reloader = () -> {
+            R r = loadFromDb(key, dbFallback, id);
+            if (r == null) {
+                hotKeyCache.remove(key);
+                return;
+            }
+            pinWithLogicalExpire(key, r, time, unit, logicalExpire);
+            entry.update(r, LocalDateTime.now().plusSeconds(entry.ttlSeconds));
+        };
+
+        // 1.先看redis里有没有
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json != null && json.isEmpty()) {
+            // 空值不钉在本地
+            return null;
+        }
+        if (json != null) {
+            RedisData redisData = readRedisData(json);
+            entry.update(toData(redisData, type), redisData.getExpireTime());
+        } else {
+            // 2.redis里也没有，互斥重建，直接写成逻辑过期格式
+            R r = loadWithMutex(key,
+                    cached -> cached.isEmpty() ? null : toValue(cached, type),
+                    () -> {
+                        R loaded = loadFromDb(key, dbFallback, id);
+                        if (loaded == null) {
+                            setNull(key);
+                        } else {
+                            pinWithLogicalExpire(key, loaded, time, unit, logicalExpire);
+                        }
+                        return loaded;
+                    });
+            if (r == null) {
+                return null;
+            }
+            entry.update(r, LocalDateTime.now().plusSeconds(entry.ttlSeconds));
+        }
+        // 3.钉在本地缓存
+        hotKeyCache.put(key, entry);
+        return (R) entry.value;
+    }
+
+    // 定时同步热点key：不再是热点的取消钉住，其余的与redis对齐，快过期时提前从数据库刷新
+    @Scheduled(fixedDelay = 1000)
+    public void refreshHotKeys() {
+        for (Map.Entry<String, HotKeyEntry> e : hotKeyCache.entrySet()) {
+            String key = e.getKey();
+            HotKeyEntry entry = e.getValue();
+            if (!hotKeyDetector.isHot(key)) {
+                hotKeyCache.remove(key, entry);
+                continue;
+            }
+            try {
+                refreshHotKey(key, entry);
+            } catch (Exception ex) {
+                log.warn("热点key刷新失败, key={}", key, ex);
+            }
+        }
+    }
+
+    private void refreshHotKey(String key, HotKeyEntry entry) {
+        // 1.与redis对齐（其他节点可能已经刷新过，或者数据更新后缓存被删除了）
+        String json = stringRedisTemplate.opsForValue().get(key);
+        if (json != null && json.isEmpty()) {
+            hotKeyCache.remove(key, entry);
+            return;
+        }
+        if (json != null) {
+            RedisData redisData = readRedisData(json);
+            entry.update(toData(redisData, entry.type), redisData.getExpireTime());
+        }
+        // 2.缓存被删除、还不是逻辑过期格式、或者快要过期了，抢锁后异步从数据库刷新
+        LocalDateTime refreshAt = LocalDateTime.now().plusSeconds(HOT_KEY_REFRESH_AHEAD_SECONDS);
+        if (json != null && entry.expireTime != null && entry.expireTime.isAfter(refreshAt)) {
+            return;
+        }
+        String lockKey = "lock:" + key;
+        if (tryLock(lockKey)) {
+            submitRebuild(key, lockKey, entry.reloader);
+        }
+    }
+
+    /**
+     * 回源数据库：经过舱壁和熔断器，数据库饱和时抛出DbBusyException快速失败，而不是在连接池上排队
+     */
+    private <R, ID> R loadFromDb(String key, Function<ID, R> dbFallback, ID id) {
+        long begin = System.nanoTime();
+        try {
+            return dbBulkhead.execute(() -> dbFallback.apply(id));
+        } finally {
+            cacheMetrics.rebuild(key, System.nanoTime() - begin);
+        }
+    }
+
+    // 写入缓存，实现了Versioned的数据通过lua脚本比较版本号，旧版本不会覆盖新版本
+    private void write(String key, Object value, String json, long ttlMillis) {
+        if (value instanceof Versioned) {
+            long version = ((Versioned) value).cacheVersion();
+            Long ok = stringRedisTemplate.execute(SET_VERSIONED_SCRIPT, Arrays.asList(key, key + VERSION_KEY_SUFFIX),
+                    String.valueOf(version), json, String.valueOf(ttlMillis), String.valueOf(versionTtlMillis(ttlMillis)));
+            if (ok != null && ok == 0L) {
+                log.debug("缓存中已有更新的版本，放弃写入, key={}, version={}", key, version);
+            }
+            return;
+        }
+        if (ttlMillis > 0) {
+            stringRedisTemplate.opsForValue().set(key, json, ttlMillis, TimeUnit.MILLISECONDS);
+        } else {
+            stringRedisTemplate.opsForValue().set(key, json);
+        }
+    }
+
+    // 版本key至少要比缓存本身活得久
+    private static long versionTtlMillis(long ttlMillis) {
+        return Math.max(ttlMillis, TimeUnit.MINUTES.toMillis(CACHE_VERSION_TTL));
+    }
+
+    // 空值缓存同样加上抖动
+    private void setNull(String key) {
+        stringRedisTemplate.opsForValue().set(key, "", jitter(TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL)), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 加上随机抖动后的TTL(毫秒)，供不经过CacheClient写入的缓存使用
+     */
+    public long ttlWithJitter(Long time, TimeUnit unit) {
+        return jitter(unit.toMillis(time));
+    }
+
+    private long jitter(long ttlMillis) {
+        return ttlMillis + (long) (ttlMillis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * 提交到共享的重建调度器，重建结束后释放锁
+     * 该key已在排队或者队列已满时任务不会执行，直接释放锁，调用方返回旧数据
+     */
+    private void submitRebuild(String key, String lockKey, Runnable rebuild) {
+        boolean accepted = rebuildExecutor.submit(key, () -> {
+            try {
+                rebuild.run();
+            } catch (DbBusyException e) {
+                // 数据库饱和，本次不重建，继续返回旧数据
+                log.warn("数据库繁忙，跳过缓存重建, key={}, reason={}", key, e.getMessage());
+            } finally {
+                unlock(lockKey);
+            }
+        });
+        if (!accepted) {
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 解析缓存中的数据，兼容两种格式：逻辑过期格式(RedisData)和直接存储的对象
+     * 同一个key可能因为晋升为热点key而切换格式，所以各个策略读取时都要兼容
+     */
+    private static RedisData readRedisData(String json) {
+        if (JSONUtil.isJsonArray(json)) {
+            // 直接存储的列表
+            RedisData redisData = new RedisData();
+            redisData.setData(JSONUtil.parseArray(json));
+            return redisData;
+        }
+        JSONObject obj = JSONUtil.parseObj(json);
+        if (obj.containsKey("data") && obj.containsKey("expireTime")) {
+            return obj.toBean(RedisData.class);
+        }
+        // 直接存储的对象没有逻辑过期时间
+        RedisData redisData = new RedisData();
+        redisData.setData(obj);
+        return redisData;
+    }
+
+    private static <R> R toValue(String json, Type type) {
+        return toData(readRedisData(json), type);
+    }
+
+    // 按目标类型还原数据，支持List<ShopType>这样的泛型类型
+    private static <R> R toData(RedisData redisData, Type type) {
+        Object data = redisData.getData();
+        return data == null ? null : ((JSON) data).toBean(type);
+    }
+
+    private static class HotKeyEntry {
+        private final Type type;
+        private final long ttlSeconds;
+        private volatile Object value;
+        private volatile LocalDateTime expireTime;
+        private volatile Runnable reloader;
+
+        private HotKeyEntry(Type type, long ttlSeconds) {
+            this.type = type;
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        private void update(Object value, LocalDateTime expireTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+    }
+
     private boolean tryLock(String key) {
         Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);
         return BooleanUtil.isTrue(flag);
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import static com.hmdp.utils.RedisConstants.CACHE_EVICT_CHANNEL;
+
+/**
+ * 缓存失效广播：redis里的缓存被失效、删除后，通知所有节点清理依赖这个key的本地缓存
+ * 1.本节点直接回调，不等redis把消息转回来
+ * 2.pub/sub不保证送达(订阅连接断开期间的消息会丢)，订阅方的本地缓存自己还要有TTL兜底
+ */
+@Slf4j
+@Component
+public class CacheEvictBus implements MessageListener {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final List<Consumer<String>> subscribers = new CopyOnWriteArrayList<>();
+
+    public CacheEvictBus(StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer container) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        container.addMessageListener(this, new ChannelTopic(CACHE_EVICT_CHANNEL));
+    }
+
+    /**
+     * 订阅失效消息，回调的参数是被失效的缓存key
+     */
+    public void subscribe(Consumer<String> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * 广播一个缓存key被失效了；缓存已经删掉，广播失败只记录日志，等本地缓存过期
+     */
+    public void publish(String key) {
+        dispatch(key);
+        try {
+            stringRedisTemplate.convertAndSend(CACHE_EVICT_CHANNEL, key);
+        } catch (Exception e) {
+            log.warn("广播缓存失效失败, key={}", key, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        dispatch(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    private void dispatch(String key) {
+        for (Consumer<String> subscriber : subscribers) {
+            try {
+                subscriber.accept(key);
+            } catch (Exception e) {
+                log.error("处理缓存失效消息失败, key={}", key, e);
+            }
+        }
+    }
+}
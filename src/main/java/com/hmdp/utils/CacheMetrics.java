@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheClient的指标，按key前缀(keyspace)分别统计，通过Micrometer暴露到 /actuator/metrics
+ * cache.requests{keyspace, result}    查询次数，result = hit / miss / null_hit / stale / l1_hit / early_refresh
+ * cache.lock.contention{keyspace}     重建时没抢到互斥锁的次数
+ * cache.query.latency{keyspace, strategy}  一次查询的耗时(含回源)
+ * cache.rebuild.duration{keyspace}    回源数据库重建的耗时，超过阈值打印慢重建日志
+ */
+@Slf4j
+@Component
+public class CacheMetrics {
+
+    public static final String HIT = "hit";
+    public static final String MISS = "miss";
+    public static final String NULL_HIT = "null_hit";
+    public static final String STALE = "stale";
+    public static final String L1_HIT = "l1_hit";
+    public static final String EARLY_REFRESH = "early_refresh";
+
+    // keyspace数量上限，防止把id当成前缀时指标无限膨胀
+    private static final int MAX_KEYSPACES = 100;
+    private static final String OTHER_KEYSPACE = "other";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${hmdp.cache.slow-rebuild-ms:200}")
+    private long slowRebuildMillis;
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> keyspaces = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void request(String keyspace, String result) {
+        String ks = keyspace(keyspace);
+        counters.computeIfAbsent("requests|" + ks + "|" + result, k -> Counter.builder("cache.requests")
+                .description("缓存查询次数")
+                .tag("keyspace", ks)
+                .tag("result", result)
+                .register(meterRegistry)).increment();
+    }
+
+    public void lockContention(String keyspace) {
+        String ks = keyspace(keyspace);
+        counters.computeIfAbsent("lock|" + ks, k -> Counter.builder("cache.lock.contention")
+                .description("重建缓存时没抢到互斥锁的次数")
+                .tag("keyspace", ks)
+                .register(meterRegistry)).increment();
+    }
+
+    public void queryLatency(String keyspace, String strategy, long nanos) {
+        String ks = keyspace(keyspace);
+        timers.computeIfAbsent("query|" + ks + "|" + strategy, k -> Timer.builder("cache.query.latency")
+                .description("缓存查询耗时(含回源)")
+                .tag("keyspace", ks)
+                .tag("strategy", strategy)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次回源重建的耗时，超过阈值打印慢重建日志
+     */
+    public void rebuild(String key, long nanos) {
+        String ks = keyspaceOf(key);
+        timers.computeIfAbsent("rebuild|" + ks, k -> Timer.builder("cache.rebuild.duration")
+                .description("回源数据库重建缓存的耗时")
+                .tag("keyspace", ks)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(nanos, TimeUnit.NANOSECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (millis >= slowRebuildMillis) {
+            log.warn("缓存重建过慢, key={}, cost={}ms", key, millis);
+        }
+    }
+
+    /**
+     * 从完整的key推出前缀：最后一段是数字id时去掉，例如 cache:shop:1 -> cache:shop:，cache:shop:type 不变
+     */
+    public String keyspaceOf(String key) {
+        int i = key.lastIndexOf(':');
+        if (i >= 0 && i < key.length() - 1 && isDigits(key, i + 1)) {
+            return keyspace(key.substring(0, i + 1));
+        }
+        return keyspace(key);
+    }
+
+    private String keyspace(String keyspace) {
+        if (keyspaces.containsKey(keyspace)) {
+            return keyspace;
+        }
+        if (keyspaces.size() >= MAX_KEYSPACES) {
+            return OTHER_KEYSPACE;
+        }
+        keyspaces.putIfAbsent(keyspace, Boolean.TRUE);
+        return keyspace;
+    }
+
+    private static boolean isDigits(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
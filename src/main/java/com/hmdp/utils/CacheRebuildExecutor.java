@@ -0,0 +1,160 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 全局共享的缓存重建调度器，替代各处各自的 Executors.newFixedThreadPool(10)
+ * 1.有界：排队+执行中的任务数超过容量直接拒绝，拒绝策略是"返回旧数据"，调用方照常返回过期值
+ * 2.去重：同一个key同一时刻最多只有一个任务在排队或执行，大面积过期时不会堆出成千上万个重复的数据库查询
+ * 3.优先级：按key的热度排队，越热的key越先重建
+ * 4.任务里的异常会被记录下来，不再被线程池吞掉；队列深度、重建耗时、失败次数通过Micrometer暴露
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final HotKeyDetector hotKeyDetector;
+
+    // 排队+执行中的任务占用的名额，提交前先拿到名额，任务结束后归还；检查和占用是一步，并发提交不会超出容量
+    private final Semaphore slots;
+
+    // 排队或执行中的key
+    private final ConcurrentHashMap<String, RebuildTask> pending = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Timer rebuildTimer;
+    private final Counter failureCounter;
+    private final Counter rejectedCounter;
+    private final Counter deduplicatedCounter;
+
+    public CacheRebuildExecutor(HotKeyDetector hotKeyDetector, MeterRegistry meterRegistry,
+                                @Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int capacity) {
+        this.hotKeyDetector = hotKeyDetector;
+        this.slots = new Semaphore(capacity);
+        AtomicInteger threadNumber = new AtomicInteger();
+        // 容量由slots控制，这里的优先队列本身不需要设上限
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        Gauge.builder("cache.rebuild.queue.depth", executor, e -> e.getQueue().size())
+                .description("等待中的缓存重建任务数")
+                .register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("执行中的缓存重建任务数")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("cache.rebuild.latency")
+                .description("缓存重建耗时")
+                .register(meterRegistry);
+        this.failureCounter = Counter.builder("cache.rebuild.failures")
+                .description("缓存重建失败次数")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("cache.rebuild.rejected")
+                .description("队列已满被拒绝(返回旧数据)的重建次数")
+                .register(meterRegistry);
+        this.deduplicatedCounter = Counter.builder("cache.rebuild.deduplicated")
+                .description("同一个key已在排队而被合并的重建次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交一个key的重建任务
+     * @return true表示任务会被执行；false表示该key已在排队或者队列已满，任务不会执行，调用方需要自己释放锁并返回旧数据
+     */
+    public boolean submit(String key, Runnable rebuild) {
+        // 1.同一个key只排队一次
+        RebuildTask task = new RebuildTask(key, rebuild, hotKeyDetector.localCount(key), sequence.incrementAndGet());
+        if (pending.putIfAbsent(key, task) != null) {
+            deduplicatedCounter.increment();
+            return false;
+        }
+        // 2.拿不到名额说明队列已满，拒绝，调用方返回旧数据
+        if (!slots.tryAcquire()) {
+            pending.remove(key, task);
+            rejectedCounter.increment();
+            log.warn("缓存重建队列已满，返回旧数据, key={}", key);
+            return false;
+        }
+        // 3.按热度排队执行
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+            pending.remove(key, task);
+            slots.release();
+            rejectedCounter.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 排队或执行中的任务数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private class RebuildTask implements Runnable, Comparable<RebuildTask> {
+        private final String key;
+        private final Runnable rebuild;
+        private final long hotness;
+        private final long seq;
+
+        private RebuildTask(String key, Runnable rebuild, long hotness, long seq) {
+            this.key = key;
+            this.rebuild = rebuild;
+            this.hotness = hotness;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            long begin = System.nanoTime();
+            try {
+                rebuild.run();
+            } catch (Exception e) {
+                failureCounter.increment();
+                log.error("缓存重建失败, key={}", key, e);
+            } finally {
+                rebuildTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+                pending.remove(key, this);
+                slots.release();
+            }
+        }
+
+        // 越热的key越靠前，同样热度先来先执行
+        @Override
+        public int compareTo(RebuildTask o) {
+            int c = Long.compare(o.hotness, hotness);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch：用固定大小的计数矩阵近似统计每个key出现的次数
+ * 估计值只会偏大不会偏小，宽度越大误差越小，深度越大误差概率越低
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray table;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.table = new AtomicLongArray(depth * width);
+    }
+
+    public void add(String key) {
+        int h1 = key.hashCode();
+        int h2 = mix(h1);
+        for (int i = 0; i < depth; i++) {
+            table.incrementAndGet(i * width + index(h1, h2, i));
+        }
+    }
+
+    public long estimate(String key) {
+        int h1 = key.hashCode();
+        int h2 = mix(h1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, table.get(i * width + index(h1, h2, i)));
+        }
+        return min;
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0L);
+        }
+    }
+
+    // 双重哈希：第i行的哈希值为 h1 + i * h2
+    private int index(int h1, int h2, int row) {
+        return ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    // murmur3的fmix32，把hashCode打散
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,137 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 缓存回源数据库的舱壁 + 熔断器
+ * 1.舱壁：限制同时回源的并发数，拿不到许可就快速失败，不在数据库连接池上排队
+ * 2.熔断：连续失败达到阈值后打开，打开期间直接快速失败；冷却时间过后放行一个试探请求，成功则关闭
+ */
+@Slf4j
+@Component
+public class DbBulkhead {
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Semaphore permits;
+    private final long acquireTimeoutMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private volatile State state = State.CLOSED;
+    private volatile long openedAt;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    // 半开状态下同一时刻只放行一个试探请求
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+
+    private final Counter rejectedCounter;
+    private final Counter openCounter;
+
+    public DbBulkhead(MeterRegistry meterRegistry,
+                      @Value("${hmdp.cache.db-bulkhead.max-concurrent:20}") int maxConcurrent,
+                      @Value("${hmdp.cache.db-bulkhead.acquire-timeout-ms:100}") long acquireTimeoutMillis,
+                      @Value("${hmdp.cache.db-bulkhead.failure-threshold:5}") int failureThreshold,
+                      @Value("${hmdp.cache.db-bulkhead.open-ms:5000}") long openMillis) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+
+        Gauge.builder("cache.db.bulkhead.available", permits, Semaphore::availablePermits)
+                .description("回源数据库剩余的并发许可")
+                .register(meterRegistry);
+        Gauge.builder("cache.db.breaker.open", this, b -> b.state == State.CLOSED ? 0 : 1)
+                .description("熔断器是否打开(含半开)")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("cache.db.bulkhead.rejected")
+                .description("舱壁已满或熔断而被拒绝的回源次数")
+                .register(meterRegistry);
+        this.openCounter = Counter.builder("cache.db.breaker.opened")
+                .description("熔断器打开次数")
+                .register(meterRegistry);
+    }
+
+    public <R> R execute(Supplier<R> call) {
+        // 1.熔断器打开，快速失败
+        boolean trial = false;
+        if (state != State.CLOSED) {
+            trial = tryEnterHalfOpen();
+            if (!trial) {
+                rejectedCounter.increment();
+                throw new DbBusyException("数据库熔断中");
+            }
+        }
+
+        // 2.舱壁：等待一小会儿拿不到许可就快速失败
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            if (trial) {
+                trialInFlight.set(false);
+            }
+            rejectedCounter.increment();
+            throw new DbBusyException("数据库繁忙");
+        }
+
+        // 3.回源
+        try {
+            R r = call.get();
+            onSuccess();
+            return r;
+        } catch (RuntimeException | Error e) {
+            onFailure();
+            throw e;
+        } finally {
+            permits.release();
+            if (trial) {
+                trialInFlight.set(false);
+            }
+        }
+    }
+
+    private boolean tryEnterHalfOpen() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            log.info("数据库熔断器关闭");
+        }
+    }
+
+    private void onFailure() {
+        // 半开时试探失败，或者连续失败达到阈值，打开熔断器
+        if (state == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = System.currentTimeMillis();
+            if (state != State.OPEN) {
+                state = State.OPEN;
+                openCounter.increment();
+                log.warn("数据库熔断器打开，{}ms内回源请求直接失败", openMillis);
+            }
+        }
+    }
+}
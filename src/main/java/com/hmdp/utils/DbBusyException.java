@@ -0,0 +1,11 @@
+package com.hmdp.utils;
+
+/**
+ * 数据库舱壁已满或熔断器打开时抛出，调用方应快速失败或返回旧数据，而不是在连接池上排队
+ */
+public class DbBusyException extends RuntimeException {
+
+    public DbBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,308 @@
+package com.hmdp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的店铺空间索引：按类型划分，每个类型把店铺按geohash网格分桶，桶内用基本类型数组存 id、经度、纬度
+ * 1.网格：经纬度各取14位交织成28位的geohash，一个格子约 0.022° x 0.011°(纬度30°附近约 2km x 1.2km)
+ * 2.查询：半径查询只扫描覆盖圆的格子；k近邻从中心格子一圈一圈向外扩，直到外圈不可能更近为止
+ * 3.更新：桶是不可变的快照，更新时复制一份新桶替换(写时复制)，查询不加锁；同一个类型的写入串行
+ * 距离计算和redis的GEO命令一致(haversine，地球半径6372797.560856米)
+ */
+public class GeoGridIndex {
+
+    private static final double EARTH_RADIUS = 6372797.560856;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private static final int BITS = 14;
+    private static final int CELLS = 1 << BITS;
+    private static final double CELL_LON = 360.0 / CELLS;
+    private static final double CELL_LAT = 180.0 / CELLS;
+
+    private final ConcurrentHashMap<Long, TypeIndex> types = new ConcurrentHashMap<>();
+
+    /**
+     * 新增或更新一个店铺的位置，类型变了会从旧类型中移除
+     */
+    public void upsert(long typeId, long id, double x, double y) {
+        for (Map.Entry<Long, TypeIndex> e : types.entrySet()) {
+            if (e.getKey() != typeId) {
+                e.getValue().remove(id);
+            }
+        }
+        types.computeIfAbsent(typeId, k -> new TypeIndex()).upsert(id, x, y);
+    }
+
+    public void remove(long typeId, long id) {
+        TypeIndex index = types.get(typeId);
+        if (index != null) {
+            index.remove(id);
+        }
+    }
+
+    public int size(long typeId) {
+        TypeIndex index = types.get(typeId);
+        return index == null ? 0 : index.positions.size();
+    }
+
+    /**
+     * 半径查询：距离(x, y)不超过radius米的店铺，由近到远最多返回limit个
+     */
+    public List<NearbyShopEngine.Hit> within(long typeId, double x, double y, double radius, int limit) {
+        TypeIndex index = types.get(typeId);
+        if (index == null || limit <= 0) {
+            return new ArrayList<>();
+        }
+        // 1.覆盖圆的格子范围
+        double dLat = radius / METERS_PER_DEGREE;
+        double dLon = radius / (METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(y)), 1e-6));
+        int minCx = lonCell(x - dLon), maxCx = lonCell(x + dLon);
+        int minCy = latCell(y - dLat), maxCy = latCell(y + dLat);
+        // 2.逐个格子计算距离，保留最近的limit个(堆的大小不超过这个类型的店铺数)
+        TopK top = new TopK(Math.max(1, Math.min(limit, index.positions.size())));
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cy = minCy; cy <= maxCy; cy++) {
+                Cell cell = index.cells.get(cellKey(cx, cy));
+                if (cell != null) {
+                    cell.collect(x, y, radius, top);
+                }
+            }
+        }
+        return top.toHits();
+    }
+
+    /**
+     * k近邻：距离(x, y)最近的k个店铺，由近到远
+     */
+    public List<NearbyShopEngine.Hit> nearest(long typeId, double x, double y, int k) {
+        TypeIndex index = types.get(typeId);
+        if (index == null || k <= 0) {
+            return new ArrayList<>();
+        }
+        int cx0 = lonCell(x), cy0 = latCell(y);
+        // 一个格子在当前纬度下最短的一边(米)，外扩n圈后，圈外的点至少离中心 n * minSide 远
+        double minSide = Math.min(CELL_LAT * METERS_PER_DEGREE,
+                CELL_LON * METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(y)), 1e-6));
+        int maxRing = index.maxRing(cx0, cy0);
+        TopK top = new TopK(Math.max(1, Math.min(k, index.positions.size())));
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // 1.扫描第ring圈的格子
+            for (int cx = cx0 - ring; cx <= cx0 + ring; cx++) {
+                if (cx < 0 || cx >= CELLS) {
+                    continue;
+                }
+                boolean edge = cx == cx0 - ring || cx == cx0 + ring;
+                for (int cy = cy0 - ring; cy <= cy0 + ring; cy += edge || ring == 0 ? 1 : 2 * ring) {
+                    if (cy < 0 || cy >= CELLS) {
+                        continue;
+                    }
+                    Cell cell = index.cells.get(cellKey(cx, cy));
+                    if (cell != null) {
+                        cell.collect(x, y, Double.MAX_VALUE, top);
+                    }
+                }
+            }
+            // 2.已经有k个，并且第k个比下一圈可能的最近距离还近，结束
+            if (top.isFull() && top.maxDistance() <= ring * minSide) {
+                break;
+            }
+        }
+        return top.toHits();
+    }
+
+    /**
+     * 两点间的距离(米)
+     */
+    public static double distance(double x1, double y1, double x2, double y2) {
+        double lat1 = Math.toRadians(y1), lat2 = Math.toRadians(y2);
+        double u = Math.sin((lat2 - lat1) / 2);
+        double v = Math.sin(Math.toRadians(x2 - x1) / 2);
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(u * u + Math.cos(lat1) * Math.cos(lat2) * v * v));
+    }
+
+    private static int lonCell(double x) {
+        return Math.min(CELLS - 1, Math.max(0, (int) ((x + 180.0) / CELL_LON)));
+    }
+
+    private static int latCell(double y) {
+        return Math.min(CELLS - 1, Math.max(0, (int) ((y + 90.0) / CELL_LAT)));
+    }
+
+    // 经纬度格子编号按位交织，就是二进制的geohash
+    private static long cellKey(int cx, int cy) {
+        long key = 0L;
+        for (int i = BITS - 1; i >= 0; i--) {
+            key = (key << 2) | ((long) ((cx >> i) & 1) << 1) | ((cy >> i) & 1);
+        }
+        return key;
+    }
+
+    private static class TypeIndex {
+        // geohash -> 桶
+        private final ConcurrentHashMap<Long, Cell> cells = new ConcurrentHashMap<>();
+        // 店铺id -> 所在的geohash
+        private final Map<Long, Long> positions = new ConcurrentHashMap<>();
+        // 有店铺的格子的范围，k近邻最多扩到这里
+        private volatile int minCx = CELLS, maxCx = -1, minCy = CELLS, maxCy = -1;
+
+        private synchronized void upsert(long id, double x, double y) {
+            int cx = lonCell(x), cy = latCell(y);
+            long key = cellKey(cx, cy);
+            Long old = positions.get(id);
+            if (old != null && old != key) {
+                removeFromCell(old, id);
+            }
+            Cell cell = cells.get(key);
+            cells.put(key, cell == null ? Cell.of(id, x, y) : cell.with(id, x, y));
+            positions.put(id, key);
+            minCx = Math.min(minCx, cx);
+            maxCx = Math.max(maxCx, cx);
+            minCy = Math.min(minCy, cy);
+            maxCy = Math.max(maxCy, cy);
+        }
+
+        private synchronized void remove(long id) {
+            Long key = positions.remove(id);
+            if (key != null) {
+                removeFromCell(key, id);
+            }
+        }
+
+        private void removeFromCell(long key, long id) {
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                return;
+            }
+            Cell next = cell.without(id);
+            if (next == null) {
+                cells.remove(key);
+            } else {
+                cells.put(key, next);
+            }
+        }
+
+        private int maxRing(int cx, int cy) {
+            if (maxCx < 0) {
+                return -1;
+            }
+            return Math.max(Math.max(cx - minCx, maxCx - cx), Math.max(cy - minCy, maxCy - cy));
+        }
+    }
+
+    /**
+     * 一个格子里的店铺，数组不可变，更新时整体替换
+     */
+    private static final class Cell {
+        private final long[] ids;
+        private final double[] xs;
+        private final double[] ys;
+
+        private Cell(long[] ids, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        private static Cell of(long id, double x, double y) {
+            return new Cell(new long[]{id}, new double[]{x}, new double[]{y});
+        }
+
+        private Cell with(long id, double x, double y) {
+            int n = ids.length;
+            for (int i = 0; i < n; i++) {
+                if (ids[i] == id) {
+                    // 同一个格子内移动，只改坐标
+                    double[] nxs = xs.clone(), nys = ys.clone();
+                    nxs[i] = x;
+                    nys[i] = y;
+                    return new Cell(ids, nxs, nys);
+                }
+            }
+            long[] nids = Arrays.copyOf(ids, n + 1);
+            double[] nxs = Arrays.copyOf(xs, n + 1), nys = Arrays.copyOf(ys, n + 1);
+            nids[n] = id;
+            nxs[n] = x;
+            nys[n] = y;
+            return new Cell(nids, nxs, nys);
+        }
+
+        // 移除后为空返回null
+        private Cell without(long id) {
+            int n = ids.length;
+            for (int i = 0; i < n; i++) {
+                if (ids[i] == id) {
+                    if (n == 1) {
+                        return null;
+                    }
+                    // 用最后一个元素补位
+                    long[] nids = Arrays.copyOf(ids, n - 1);
+                    double[] nxs = Arrays.copyOf(xs, n - 1), nys = Arrays.copyOf(ys, n - 1);
+                    if (i < n - 1) {
+                        nids[i] = ids[n - 1];
+                        nxs[i] = xs[n - 1];
+                        nys[i] = ys[n - 1];
+                    }
+                    return new Cell(nids, nxs, nys);
+                }
+            }
+            return this;
+        }
+
+        private void collect(double x, double y, double radius, TopK top) {
+            for (int i = 0; i < ids.length; i++) {
+                double d = distance(x, y, xs[i], ys[i]);
+                if (d <= radius) {
+                    top.offer(ids[i], d);
+                }
+            }
+        }
+    }
+
+    /**
+     * 保留距离最近的k个，k一般只有一页的大小，插入排序即可
+     */
+    private static final class TopK {
+        private final long[] ids;
+        private final double[] distances;
+        private int size;
+
+        private TopK(int k) {
+            this.ids = new long[k];
+            this.distances = new double[k];
+        }
+
+        private void offer(long id, double d) {
+            if (size == ids.length && d >= distances[size - 1]) {
+                return;
+            }
+            int i = size == ids.length ? size - 1 : size++;
+            while (i > 0 && distances[i - 1] > d) {
+                ids[i] = ids[i - 1];
+                distances[i] = distances[i - 1];
+                i--;
+            }
+            ids[i] = id;
+            distances[i] = d;
+        }
+
+        private boolean isFull() {
+            return size == ids.length;
+        }
+
+        private double maxDistance() {
+            return distances[size - 1];
+        }
+
+        private List<NearbyShopEngine.Hit> toHits() {
+            List<NearbyShopEngine.Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                hits.add(new NearbyShopEngine.Hit(ids[i], distances[i]));
+            }
+            return hits;
+        }
+    }
+}
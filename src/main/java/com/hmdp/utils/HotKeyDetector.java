@@ -0,0 +1,240 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.HotKeyDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.hmdp.utils.RedisConstants.HOT_KEY_SLOT_KEY;
+import static com.hmdp.utils.RedisConstants.HOT_KEY_TOP_KEY;
+
+/**
+ * 热点key探测
+ * 1.本地：对CacheClient的查询按比例采样，用Count-Min Sketch计数，滑动窗口由多个时间片组成，再用小顶堆维护本地top-K
+ * 2.全局：每个时间片结束时把本地top-K的计数汇总到redis，所有节点合并最近一个窗口的计数，得到全局top-K
+ * 3.全局计数达到阈值的key晋升为热点key，由CacheClient钉在本地缓存并提前刷新
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    // 滑动窗口 = 6个时间片 * 10秒
+    private static final int SLOT_COUNT = 6;
+    private static final long SLOT_SECONDS = 10L;
+
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.hot-key.sample-rate:0.1}")
+    private double sampleRate;
+
+    @Value("${hmdp.hot-key.top-k:20}")
+    private int topK;
+
+    @Value("${hmdp.hot-key.threshold:500}")
+    private long threshold;
+
+    private final CountMinSketch[] slots = new CountMinSketch[SLOT_COUNT];
+    private volatile int current = 0;
+
+    // 本地top-K小顶堆，堆顶是候选里计数最小的
+    private final PriorityQueue<Candidate> heap = new PriorityQueue<>(Comparator.comparingLong(c -> c.count));
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    // 堆满时进入候选的最低计数，采样后先和它比较，避免每次都加锁
+    private volatile long admitCount = 0L;
+
+    private volatile List<HotKeyDTO> topKeys = Collections.emptyList();
+    private volatile Set<String> hotKeys = Collections.emptySet();
+
+    public HotKeyDetector(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        }
+    }
+
+    /**
+     * 记录一次查询
+     * @return 该key当前是否是热点key
+     */
+    public boolean record(String key) {
+        if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            slots[current].add(key);
+            long count = estimate(key);
+            if (count >= admitCount) {
+                offer(key, count);
+            }
+        }
+        return hotKeys.contains(key);
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.contains(key);
+    }
+
+    /**
+     * 全局top-K，按访问次数倒序
+     */
+    public List<HotKeyDTO> getTopKeys() {
+        return topKeys;
+    }
+
+    /**
+     * 某个key在本地滑动窗口内的访问次数(估计值，已按采样率放大)
+     */
+    public long localCount(String key) {
+        return scale(estimate(key));
+    }
+
+    // 每个时间片结束时：汇总到redis、窗口前进、刷新全局top-K
+    @Scheduled(fixedRate = SLOT_SECONDS * 1000)
+    public void rotate() {
+        int finished = current;
+        long slotId = System.currentTimeMillis() / 1000 / SLOT_SECONDS;
+        // 1.把刚结束的时间片里本地top-K的计数汇总到redis
+        List<String> localTop = localTopKeys();
+        try {
+            flushSlot(slotId, slots[finished], localTop);
+        } catch (Exception e) {
+            log.warn("热点key计数汇总到redis失败", e);
+        }
+
+        // 2.窗口前进，清空最老的时间片
+        int next = (finished + 1) % SLOT_COUNT;
+        slots[next].clear();
+        current = next;
+
+        // 3.最老的时间片被清掉了，重新估计候选的计数
+        synchronized (heap) {
+            heap.clear();
+            candidates.clear();
+            admitCount = 0L;
+        }
+        for (String key : localTop) {
+            long count = estimate(key);
+            if (count > 0) {
+                offer(key, count);
+            }
+        }
+
+        // 4.合并所有节点最近一个窗口的计数，得到全局top-K
+        try {
+            refreshGlobalTop(slotId);
+        } catch (Exception e) {
+            log.warn("刷新全局热点key失败", e);
+        }
+    }
+
+    private void flushSlot(long slotId, CountMinSketch sketch, List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        String slotKey = HOT_KEY_SLOT_KEY + slotId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                long count = scale(sketch.estimate(key));
+                if (count > 0) {
+                    conn.zIncrBy(slotKey, count, key);
+                }
+            }
+            // 只需要保留最近一个窗口的时间片
+            conn.expire(slotKey, SLOT_SECONDS * SLOT_COUNT * 2);
+            return null;
+        });
+    }
+
+    private void refreshGlobalTop(long slotId) {
+        List<String> windowKeys = new ArrayList<>(SLOT_COUNT - 1);
+        for (long id = slotId - SLOT_COUNT + 1; id < slotId; id++) {
+            windowKeys.add(HOT_KEY_SLOT_KEY + id);
+        }
+        stringRedisTemplate.opsForZSet().unionAndStore(HOT_KEY_SLOT_KEY + slotId, windowKeys, HOT_KEY_TOP_KEY);
+        Set<ZSetOperations.TypedTuple<String>> tuples =
+                stringRedisTemplate.opsForZSet().reverseRangeWithScores(HOT_KEY_TOP_KEY, 0, topK - 1);
+        List<HotKeyDTO> top = new ArrayList<>();
+        Set<String> hot = new HashSet<>();
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                long count = tuple.getScore() == null ? 0L : tuple.getScore().longValue();
+                boolean promoted = count >= threshold;
+                if (promoted) {
+                    hot.add(tuple.getValue());
+                }
+                top.add(new HotKeyDTO(tuple.getValue(), count, promoted));
+            }
+        }
+        topKeys = Collections.unmodifiableList(top);
+        hotKeys = Collections.unmodifiableSet(hot);
+    }
+
+    private void offer(String key, long count) {
+        synchronized (heap) {
+            Candidate candidate = candidates.get(key);
+            if (candidate != null) {
+                // 已在堆中，更新计数后重新入堆
+                heap.remove(candidate);
+                candidate.count = count;
+                heap.offer(candidate);
+            } else if (heap.size() < topK) {
+                candidate = new Candidate(key, count);
+                candidates.put(key, candidate);
+                heap.offer(candidate);
+            } else if (count > heap.peek().count) {
+                // 挤掉堆顶计数最小的候选
+                candidates.remove(heap.poll().key);
+                candidate = new Candidate(key, count);
+                candidates.put(key, candidate);
+                heap.offer(candidate);
+            }
+            admitCount = heap.size() < topK ? 0L : heap.peek().count;
+        }
+    }
+
+    private List<String> localTopKeys() {
+        synchronized (heap) {
+            return new ArrayList<>(candidates.keySet());
+        }
+    }
+
+    private long estimate(String key) {
+        long count = 0L;
+        for (CountMinSketch slot : slots) {
+            count += slot.estimate(key);
+        }
+        return count;
+    }
+
+    // 采样计数按采样率放大为实际访问次数
+    private long scale(long sampled) {
+        return Math.round(sampled / sampleRate);
+    }
+
+    private static class Candidate {
+        private final String key;
+        private long count;
+
+        private Candidate(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于进程内geohash网格索引的附近店铺查询，翻页时不再每页都访问一次redis
+ * 1.某个类型第一次被查询时从数据库整体加载
+ * 2.本节点的新增、更新直接写入索引；其他节点的更新由定时任务按 update_time 增量同步
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "hmdp.nearby.engine", havingValue = "local")
+public class LocalGeoEngine implements NearbyShopEngine {
+
+    // 增量同步时往前多看一段时间，防止边界上的更新(数据库时间只精确到秒)和节点间时钟误差漏掉
+    private static final long SYNC_OVERLAP_SECONDS = 5L;
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private final ShopMapper shopMapper;
+    private final GeoGridIndex index = new GeoGridIndex();
+
+    // 已经整体加载过的类型
+    private final Set<Long> loadedTypes = ConcurrentHashMap.newKeySet();
+    private final SingleFlight loader = new SingleFlight();
+    private volatile LocalDateTime lastSync = LocalDateTime.now();
+
+    public LocalGeoEngine(ShopMapper shopMapper) {
+        this.shopMapper = shopMapper;
+    }
+
+    @Override
+    public List<Hit> search(long typeId, double x, double y, double radius, int limit) {
+        if (!loadedTypes.contains(typeId)) {
+            loader.execute(String.valueOf(typeId), () -> load(typeId));
+        }
+        return index.within(typeId, x, y, radius, limit);
+    }
+
+    @Override
+    public void add(List<Shop> shops) {
+        for (Shop shop : shops) {
+            if (shop.getTypeId() != null && shop.getX() != null && shop.getY() != null) {
+                index.upsert(shop.getTypeId(), shop.getId(), shop.getX(), shop.getY());
+            }
+        }
+    }
+
+    @Override
+    public void remove(long typeId, long shopId) {
+        index.remove(typeId, shopId);
+    }
+
+    // 定时同步其他节点的更新
+    @Scheduled(fixedDelayString = "${hmdp.nearby.sync-interval-ms:30000}")
+    public void sync() {
+        if (loadedTypes.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                .select("id", "type_id", "x", "y")
+                .ge("update_time", lastSync.minusSeconds(SYNC_OVERLAP_SECONDS)));
+        // 还没加载的类型不用同步，第一次查询时会整体加载
+        shops.removeIf(shop -> !loadedTypes.contains(shop.getTypeId()));
+        add(shops);
+        lastSync = now;
+        if (!shops.isEmpty()) {
+            log.debug("附近店铺索引增量同步了{}个店铺", shops.size());
+        }
+    }
+
+    // 按id分批(keyset分页)加载一个类型的所有店铺坐标
+    private Void load(long typeId) {
+        if (loadedTypes.contains(typeId)) {
+            return null;
+        }
+        long lastId = 0L;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .eq("type_id", typeId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("LIMIT " + LOAD_BATCH_SIZE));
+            add(shops);
+            if (shops.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        loadedTypes.add(typeId);
+        log.info("附近店铺索引加载完成, typeId={}, size={}", typeId, index.size(typeId));
+        return null;
+    }
+}
@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+
+import java.util.List;
+
+/**
+ * 附近店铺的查询引擎，通过 hmdp.nearby.engine 选择实现
+ * redis：按类型划分的redis GEO集合(默认)；local：进程内的geohash网格索引
+ */
+public interface NearbyShopEngine {
+
+    /**
+     * 查询某个类型距离(x, y)不超过radius米的店铺，由近到远最多返回limit个
+     */
+    List<Hit> search(long typeId, double x, double y, double radius, int limit);
+
+    /**
+     * 新增或更新店铺的位置，没有类型或坐标的店铺忽略
+     */
+    void add(List<Shop> shops);
+
+    /**
+     * 把店铺从某个类型中移除(店铺换了类型)
+     */
+    void remove(long typeId, long shopId);
+
+    /**
+     * 查询结果：店铺id和距离(米)
+     */
+    final class Hit {
+        private final long id;
+        private final double distance;
+
+        public Hit(long id, double distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public double getDistance() {
+            return distance;
+        }
+    }
+}
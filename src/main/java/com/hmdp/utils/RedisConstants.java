@@ -8,21 +8,63 @@ public class RedisConstants {
 
     public static final Long CACHE_NULL_TTL = 2L;
 
+    // 缓存版本key的最短存活时间(分钟)
+    public static final Long CACHE_VERSION_TTL = 60L;
+
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    // 店铺的哈希缓存(按字段存储，计数字段原地HINCRBY)
+    public static final String CACHE_SHOP_HASH_KEY = "cache:shop:hash:";
 
     // 新增店铺类型缓存Key）
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shop:type";
 
-    public static final Long CACHE_SHOP_TYPE_TTL = 30L;
+    public static final long CACHE_SHOP_TYPE_TTL = 30L;
+    // 店铺类型的版本号，修改店铺类型后INCR，各节点发现版本变了重新加载本地快照
+    public static final String SHOP_TYPE_VERSION_KEY = "shop:type:version";
+
+    // 店铺的优惠券目录缓存(静态信息，秒杀库存查询时用 seckill:stock:{id} 覆盖)，新增优惠券、秒杀结束时失效
+    public static final String CACHE_VOUCHER_SHOP_KEY = "cache:voucher:shop:";
+    public static final long CACHE_VOUCHER_SHOP_TTL = 30L;
+
+    // 缓存失效广播频道，消息是被失效的缓存key，各节点据此清理本地缓存
+    public static final String CACHE_EVICT_CHANNEL = "channel:cache:evict";
 
 
+    // 用户的公开资料(昵称、头像)缓存，哈希，装饰博文作者等时批量读取
+    public static final String CACHE_USER_PROFILE_KEY = "cache:user:profile:";
+    public static final Long CACHE_USER_PROFILE_TTL = 30L;
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    // 店铺排行榜全量重建的分布式锁，同一时刻只有一个节点在写临时key
+    public static final String LOCK_SHOP_RANK_REBUILD_KEY = "lock:rank:shop";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    // 热门博文：按时间衰减的热度排序的ZSET，以及分数的基准时间(秒)，score = Σ 权重 * e^((事件时间 - 基准时间) / τ)
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_EPOCH_KEY = "blog:hot:epoch";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
+    // 某个类型的店铺坐标已经从数据库全部加载进GEO集合的标记 shop:geo-loaded:{typeId}
+    public static final String SHOP_GEO_LOADED_KEY = "shop:geo-loaded:";
+    // 店铺id的布隆过滤器，以及全部店铺写入完成的就绪标记
+    public static final String SHOP_BLOOM_KEY = "bloom:shop";
+    public static final String SHOP_BLOOM_READY_KEY = "bloom:shop:ready";
+    // 店铺浏览量：每小时一个哈希 shop:pv:{yyyyMMddHH}，field是店铺id；访客数：每个店铺每天一个HyperLogLog shop:uv:{yyyyMMdd}:{shopId}
+    public static final String SHOP_PV_KEY = "shop:pv:";
+    public static final String SHOP_UV_KEY = "shop:uv:";
+    // 浏览统计key的存活时间(天)，汇总到 tb_shop_stats 之后就不再需要
+    public static final Long SHOP_VIEW_TTL = 3L;
+    // 店铺批量导入的进度(哈希)和逐行错误(列表 shop:import:{taskId}:errors)
+    public static final String SHOP_IMPORT_KEY = "shop:import:";
+    public static final Long SHOP_IMPORT_TTL = 24L;
+    // 按类型划分的店铺排行榜 shop:rank:{sold|score|comments}:{typeId}
+    public static final String SHOP_RANK_KEY = "shop:rank:";
     public static final String USER_SIGN_KEY = "sign:";
+
+    // 热点key探测：每个时间片各节点汇总的计数，以及合并后的全局top-K
+    public static final String HOT_KEY_SLOT_KEY = "hotkey:slot:";
+    public static final String HOT_KEY_TOP_KEY = "hotkey:top";
 }
@@ -14,4 +14,6 @@ public class RedisData {
     // 装饰器模式：通过将对象放入包含行为的特殊包装类中来为原始对象动态的添加新行为。
     // 这种模式是继承的一种替代方案，可以灵活的扩展对象的功能
     private Object data;
+    // 重建这份数据花费的时间(毫秒)，提前刷新(XFetch)策略用它决定提前多久刷新，其他策略为null
+    private Long delta;
 }
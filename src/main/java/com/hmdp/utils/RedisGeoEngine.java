@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.CACHE_NULL_TTL;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_LOADED_KEY;
+
+/**
+ * 基于redis GEO的附近店铺查询：每个类型一个GEO集合 shop:geo:{typeId}，member是店铺id
+ * 第一次查询某个类型时从数据库加载，加载完成后写入标记 shop:geo-loaded:{typeId}；
+ * 不能用GEO集合是否存在来判断，新增店铺的GEOADD会先建出只有一个店铺的集合，没有店铺带坐标的类型则永远不存在；
+ * 不存在的类型不加载，没有店铺的类型的标记带TTL，随意传入的typeId不会无限制地建出标记、查询数据库
+ */
+@Component
+@ConditionalOnProperty(name = "hmdp.nearby.engine", havingValue = "redis", matchIfMissing = true)
+public class RedisGeoEngine implements NearbyShopEngine {
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+    private final ShopTypeSnapshot shopTypeSnapshot;
+
+    // 同一个类型的GEO集合同时只加载一次
+    private final SingleFlight loader = new SingleFlight();
+
+    public RedisGeoEngine(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper, ShopTypeSnapshot shopTypeSnapshot) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+        this.shopTypeSnapshot = shopTypeSnapshot;
+    }
+
+    @Override
+    public List<Hit> search(long typeId, double x, double y, double radius, int limit) {
+        // 0.类型不存在，直接返回空
+        if (!shopTypeSnapshot.exists(typeId)) {
+            return Collections.emptyList();
+        }
+        // 1.这个类型还没有完整加载过，先从数据库加载
+        String key = SHOP_GEO_KEY + typeId;
+        String loadedKey = SHOP_GEO_LOADED_KEY + typeId;
+        if (!BooleanUtil.isTrue(stringRedisTemplate.hasKey(loadedKey))) {
+            loader.execute(loadedKey, () -> load(typeId));
+        }
+        // 2.按距离由近到远查询 GEORADIUS key x y radius m WITHDIST ASC COUNT limit
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                key,
+                new Circle(new Point(x, y), new Distance(radius, RedisGeoCommands.DistanceUnit.METERS)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(limit));
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        List<Hit> hits = new ArrayList<>(results.getContent().size());
+        results.getContent().forEach(result -> hits.add(
+                new Hit(Long.parseLong(result.getContent().getName()), result.getDistance().getValue())));
+        return hits;
+    }
+
+    @Override
+    public void add(List<Shop> shops) {
+        // 1.按类型分组，没有坐标的店铺跳过
+        Map<Long, Map<String, Point>> byType = new HashMap<>();
+        for (Shop shop : shops) {
+            if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+                continue;
+            }
+            byType.computeIfAbsent(shop.getTypeId(), k -> new HashMap<>())
+                    .put(shop.getId().toString(), new Point(shop.getX(), shop.getY()));
+        }
+        if (byType.isEmpty()) {
+            return;
+        }
+        // 2.每个类型一条GEOADD，一起走pipeline
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            byType.forEach((typeId, locations) -> conn.geoAdd(SHOP_GEO_KEY + typeId, locations));
+            return null;
+        });
+    }
+
+    @Override
+    public void remove(long typeId, long shopId) {
+        stringRedisTemplate.opsForGeo().remove(SHOP_GEO_KEY + typeId, String.valueOf(shopId));
+    }
+
+    // 从数据库加载一个类型的所有店铺坐标，全部写入后再写加载标记；
+    // 没有店铺时也写，短时间内不再查库，标记带TTL，过期后重新确认
+    private Void load(long typeId) {
+        List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                .select("id", "type_id", "x", "y")
+                .eq("type_id", typeId));
+        add(shops);
+        String loadedKey = SHOP_GEO_LOADED_KEY + typeId;
+        String now = String.valueOf(System.currentTimeMillis());
+        if (shops.isEmpty()) {
+            stringRedisTemplate.opsForValue().set(loadedKey, now, CACHE_NULL_TTL, TimeUnit.MINUTES);
+        } else {
+            stringRedisTemplate.opsForValue().set(loadedKey, now);
+        }
+        return null;
+    }
+}
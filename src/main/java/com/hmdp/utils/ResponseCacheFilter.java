@@ -0,0 +1,188 @@
+package com.hmdp.utils;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import cn.hutool.json.JSONUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 公开GET接口的响应缓存：缓存序列化好的Result字节，命中时不访问redis，也不再做反序列化、转换和序列化
+ * 1.URL和它背后的实体缓存key一一对应(/shop/1 -> cache:shop:1)，响应缓存就按实体缓存key存；只缓存成功的响应
+ * 2.实体缓存被失效、删除时由CacheEvictBus通知所有节点一起删除；另有较短的TTL，兜住丢失的广播和不经过失效的计数变化
+ * 3.响应带ETag(响应字节的MD5)，客户端带If-None-Match且内容没变时直接返回304
+ */
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    // 可以缓存的接口，路径变量拼在实体缓存key前缀后面
+    // (/shop-type/list 由店铺类型的本地快照直接返回序列化好的字节；/voucher/list/{shopId} 带实时秒杀库存，都不在这里缓存)
+    private static final List<Route> ROUTES = Arrays.asList(
+            new Route("/shop/{id:\\d+}", CACHE_SHOP_KEY)
+    );
+
+    // 实体缓存key -> 响应
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final CacheMetrics cacheMetrics;
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    public ResponseCacheFilter(CacheEvictBus cacheEvictBus, CacheMetrics cacheMetrics, long ttlMillis, int maxEntries) {
+        this.cacheMetrics = cacheMetrics;
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        cacheEvictBus.subscribe(entries::remove);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        // 带查询参数的请求不缓存，避免同一个实体存出多份
+        return !"GET".equals(request.getMethod()) || request.getQueryString() != null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // 1.找到接口对应的实体缓存key，不是可以缓存的接口直接放行
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        Route route = null;
+        String key = null;
+        for (Route r : ROUTES) {
+            if (PATH_MATCHER.match(r.pattern, path)) {
+                route = r;
+                key = r.keyPrefix + PATH_MATCHER.extractUriTemplateVariables(r.pattern, path).get("id");
+                break;
+            }
+        }
+        if (route == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String keyspace = "http:" + route.pattern;
+        long now = System.currentTimeMillis();
+
+        // 2.命中，直接写出缓存的字节
+        Entry entry = entries.get(key);
+        if (entry != null && entry.body != null && entry.expireAt > now) {
+            cacheMetrics.request(keyspace, CacheMetrics.HIT);
+            write(request, response, entry);
+            return;
+        }
+        cacheMetrics.request(keyspace, CacheMetrics.MISS);
+
+        // 3.未命中，先放一个占位；处理期间实体被失效会删掉占位，之后基于旧数据的响应就不会写入
+        Entry placeholder = reserve(key, now);
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            // 4.成功的响应替换占位
+            byte[] body = wrapper.getContentAsByteArray();
+            if (placeholder != null && cacheable(wrapper, body)) {
+                Entry filled = new Entry(body, wrapper.getContentType(), "\"" + DigestUtil.md5Hex(body) + "\"",
+                        System.currentTimeMillis() + ttlMillis);
+                entries.replace(key, placeholder, filled);
+                wrapper.setHeader(HttpHeaders.ETAG, filled.etag);
+                wrapper.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+            }
+        } finally {
+            if (placeholder != null) {
+                entries.remove(key, placeholder);
+            }
+            wrapper.copyBodyToResponse();
+        }
+    }
+
+    // 放入占位，缓存满了先清理过期的，还是满的就不缓存
+    private Entry reserve(String key, long now) {
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            entries.values().removeIf(e -> e.expireAt <= now);
+            if (entries.size() >= maxEntries) {
+                return null;
+            }
+        }
+        Entry placeholder = new Entry(null, null, null, now + ttlMillis);
+        entries.put(key, placeholder);
+        return placeholder;
+    }
+
+    private static boolean cacheable(ContentCachingResponseWrapper wrapper, byte[] body) {
+        if (wrapper.getStatus() != HttpServletResponse.SC_OK || body.length == 0) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(JSONUtil.parseObj(new String(body, StandardCharsets.UTF_8)).getBool("success"));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void write(HttpServletRequest request, HttpServletResponse response, Entry entry) throws IOException {
+        response.setHeader(HttpHeaders.ETAG, entry.etag);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), entry.etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(entry.contentType);
+        response.setContentLength(entry.body.length);
+        response.getOutputStream().write(entry.body);
+    }
+
+    // If-None-Match 可能是逗号分隔的多个ETag，或者 *
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Route {
+        private final String pattern;
+        private final String keyPrefix;
+
+        private Route(String pattern, String keyPrefix) {
+            this.pattern = pattern;
+            this.keyPrefix = keyPrefix;
+        }
+    }
+
+    private static class Entry {
+        // 占位时为null
+        private final byte[] body;
+        private final String contentType;
+        private final String etag;
+        private final long expireAt;
+
+        private Entry(byte[] body, String contentType, String etag, long expireAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.codec.Base64;
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 游标翻页的游标：把上一页最后一条记录的排序字段拼起来做Base64，对前端是不透明的字符串
+ * 下一页用这些字段做 WHERE (排序字段) > (游标) 的seek查询，不再需要OFFSET和COUNT
+ */
+public class ScrollCursor {
+
+    private static final String SEPARATOR = ":";
+
+    public static String encode(Object... values) {
+        return Base64.encodeUrlSafe(StrUtil.join(SEPARATOR, values));
+    }
+
+    /**
+     * 解析游标
+     * @return 游标为空时返回null，表示从第一页开始
+     */
+    public static String[] decode(String cursor) {
+        if (StrUtil.isBlank(cursor)) {
+            return null;
+        }
+        return Base64.decodeStr(cursor).split(SEPARATOR);
+    }
+
+    /**
+     * 解析全部由数字组成的游标
+     * @param parts 游标应该包含的字段个数
+     * @return 游标为空时返回null，表示从第一页开始
+     * @throws IllegalArgumentException 游标格式不对
+     */
+    public static long[] decodeLongs(String cursor, int parts) {
+        String[] values = decode(cursor);
+        if (values == null) {
+            return null;
+        }
+        if (values.length != parts) {
+            throw new IllegalArgumentException("无效的游标");
+        }
+        long[] longs = new long[parts];
+        for (int i = 0; i < parts; i++) {
+            longs[i] = Long.parseLong(values[i]);
+        }
+        return longs;
+    }
+}
@@ -0,0 +1,126 @@
+package com.hmdp.utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.SHOP_BLOOM_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_BLOOM_READY_KEY;
+
+/**
+ * 店铺id的布隆过滤器，拦截查询不存在的店铺(缓存穿透)，存在redis的bitmap里，所有节点共用
+ * 1.位数组长度和哈希函数个数按预计店铺数和误判率计算，k个位置由id的两个64位哈希线性组合得到
+ * 2.写入、查询都是一次pipeline：批量写入一批id只有一个来回，查询一个id的k个位也只有一个来回
+ * 3.只有预热把全部店铺写入后(有就绪标记)才会拦截；redis被清空后标记也没了，自动放行，不会误拦
+ */
+@Component
+public class ShopBloomFilter {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.bloom.expected-insertions:10000000}")
+    private long expectedInsertions;
+
+    @Value("${hmdp.bloom.fpp:0.01}")
+    private double fpp;
+
+    // 位数组长度
+    private long bits;
+    // 哈希函数个数
+    private int hashes;
+
+    public ShopBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        // m = -n * ln(p) / (ln2)^2，redis的bitmap最多 2^32 位
+        double ln2 = Math.log(2);
+        bits = Math.min(1L << 32, (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2)));
+        // k = m / n * ln2
+        hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * ln2));
+    }
+
+    /**
+     * 批量加入店铺id
+     */
+    public void addAll(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : ids) {
+                for (long offset : offsets(id)) {
+                    conn.setBit(SHOP_BLOOM_KEY, offset, true);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 店铺可能存在(或者过滤器还没有就绪)返回true，一定不存在返回false
+     */
+    public boolean mightContain(Long id) {
+        long[] offsets = offsets(id);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.exists(SHOP_BLOOM_READY_KEY);
+            for (long offset : offsets) {
+                conn.getBit(SHOP_BLOOM_KEY, offset);
+            }
+            return null;
+        });
+        // 1.还没有就绪，全部放行
+        if (!Boolean.TRUE.equals(results.get(0))) {
+            return true;
+        }
+        // 2.k个位都是1才可能存在
+        for (int i = 1; i < results.size(); i++) {
+            if (!Boolean.TRUE.equals(results.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 全部店铺都已经加入，开始拦截
+     */
+    public void markReady() {
+        stringRedisTemplate.opsForValue().set(SHOP_BLOOM_READY_KEY, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 有店铺没能写入时停止拦截，下次预热写入全部店铺后再开始
+     */
+    public void markNotReady() {
+        stringRedisTemplate.delete(SHOP_BLOOM_READY_KEY);
+    }
+
+    // 双重哈希：第i个位置 = h1 + i * h2
+    private long[] offsets(long id) {
+        long h1 = mix(id);
+        long h2 = mix(id ^ 0x9E3779B97F4A7C15L) | 1L;
+        long[] offsets = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, bits);
+        }
+        return offsets;
+    }
+
+    // splitmix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
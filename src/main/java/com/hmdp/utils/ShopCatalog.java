@@ -0,0 +1,618 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 店铺目录的列式内存快照，用于分类页按 类型、商圈、均价区间、评分、是否营业中 任意组合筛选
+ * 1.存储：每一列是一个基本类型数组(类型、均价、评分、销量、经纬度、营业时间)，商圈做字典编码存成int
+ * 2.筛选：结果是一个位图，每个条件扫描对应的列，把不满足的行清掉；已经全为0的字(64行)直接跳过
+ * 3.排序：在剩下的行上用基本类型的堆取前K个，不需要对全部结果排序；
+ *   按距离排序时比较的是球面单位向量的点积(和球面距离单调，只要3次乘法)，只对返回的这一页计算真实距离
+ * 4.更新：只有一个写线程(加锁)，已有的行原地修改，新增的行追加，容量不够时复制到两倍大小的新数组后替换；查询不加锁
+ */
+@Component
+public class ShopCatalog {
+
+    public static final String SORT_SOLD = "sold";
+    public static final String SORT_SCORE = "score";
+    public static final String SORT_PRICE = "price";
+    public static final String SORT_DISTANCE = "distance";
+
+    private static final int BY_SCORE = 0;
+    private static final int BY_SOLD = 1;
+    private static final int BY_PRICE = 2;
+    private static final int BY_DISTANCE = 3;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // 没有值的均价、营业时间
+    private static final int NONE = -1;
+    // 一个字里为1的行不超过这个数时只检查为1的行
+    private static final int SPARSE_BITS = 8;
+
+    private volatile Columns columns;
+
+    // 商圈 -> 编码
+    private final Map<String, Integer> areaCodes = new ConcurrentHashMap<>();
+
+    public boolean isReady() {
+        return columns != null;
+    }
+
+    public int size() {
+        Columns c = columns;
+        return c == null ? 0 : c.size;
+    }
+
+    public static boolean supports(String sortBy) {
+        return SORT_SOLD.equals(sortBy) || SORT_SCORE.equals(sortBy)
+                || SORT_PRICE.equals(sortBy) || SORT_DISTANCE.equals(sortBy);
+    }
+
+    /**
+     * 用全部店铺重新构建，构建期间查询继续使用旧快照
+     */
+    public synchronized void build(Collection<Shop> shops) {
+        Columns c = new Columns(Math.max(INITIAL_CAPACITY, shops.size()));
+        for (Shop shop : shops) {
+            c.set(c.size, shop, areaCode(shop.getArea()));
+            c.rows.put(shop.getId(), c.size);
+            c.size++;
+        }
+        columns = c;
+    }
+
+    /**
+     * 新增或修改一个店铺，需要完整的筛选字段
+     */
+    public synchronized void upsert(Shop shop) {
+        Columns c = columns;
+        if (c == null) {
+            // 还没构建完成，构建时会从数据库读到这个店铺
+            return;
+        }
+        int row = c.rows.get(shop.getId());
+        if (row >= 0) {
+            c.set(row, shop, areaCode(shop.getArea()));
+            return;
+        }
+        if (c.size == c.ids.length) {
+            c = c.grow();
+            columns = c;
+        }
+        c.set(c.size, shop, areaCode(shop.getArea()));
+        c.rows.put(shop.getId(), c.size);
+        // size是volatile的，最后写，查询看到新的size时这一行已经写好了
+        c.size++;
+    }
+
+    /**
+     * 累加销量
+     */
+    public synchronized void incrSold(long shopId, long delta) {
+        Columns c = columns;
+        if (c == null) {
+            return;
+        }
+        int row = c.rows.get(shopId);
+        if (row >= 0) {
+            c.sold[row] += (int) delta;
+        }
+    }
+
+    /**
+     * 按条件筛选，排序后返回第 from ~ from+limit-1 个，传了坐标时带上距离
+     */
+    public List<NearbyShopEngine.Hit> filter(ShopFilterDTO filter, LocalTime now, int from, int limit) {
+        Columns c = columns;
+        if (c == null || limit <= 0 || from < 0 || from >= c.size) {
+            return new ArrayList<>();
+        }
+        int n = c.size;
+        // 1.所有行都置1
+        long[] bits = new long[(n + 63) >>> 6];
+        Arrays.fill(bits, -1L);
+        if ((n & 63) != 0) {
+            bits[bits.length - 1] = (1L << n) - 1;
+        }
+        // 2.逐个条件清掉不满足的行，等值条件选择性最好，放在前面
+        if (filter.getTypeId() != null) {
+            c.andEquals(bits, filter.getTypeId());
+        }
+        if (StrUtil.isNotBlank(filter.getArea())) {
+            Integer code = areaCodes.get(filter.getArea().trim());
+            if (code == null) {
+                return new ArrayList<>();
+            }
+            c.andArea(bits, code);
+        }
+        if (filter.getMinPrice() != null || filter.getMaxPrice() != null) {
+            c.andPrice(bits,
+                    filter.getMinPrice() == null ? 0L : filter.getMinPrice(),
+                    filter.getMaxPrice() == null ? Long.MAX_VALUE : filter.getMaxPrice());
+        }
+        if (filter.getMinScore() != null) {
+            c.andMinScore(bits, filter.getMinScore());
+        }
+        if (Boolean.TRUE.equals(filter.getOpenNow())) {
+            c.andOpen(bits, now.getHour() * 60 + now.getMinute());
+        }
+        // 3.剩下的行取前 from+limit 个，不会超过总行数
+        int sortBy = sortMode(filter.getSortBy());
+        boolean located = filter.getX() != null && filter.getY() != null;
+        double[] q = located ? unitVector(filter.getX(), filter.getY()) : new double[3];
+        TopK top = new TopK((int) Math.min((long) from + limit, n));
+        for (int w = 0; w < bits.length; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                int row = (w << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                top.offer(c.sortKey(row, sortBy, q), c.ids[row], row);
+            }
+        }
+        // 4.截取这一页
+        int[] rows = top.sortedRows();
+        List<NearbyShopEngine.Hit> hits = new ArrayList<>(Math.max(0, rows.length - from));
+        for (int i = from; i < rows.length; i++) {
+            int row = rows[i];
+            double distance = located
+                    ? GeoGridIndex.distance(filter.getX(), filter.getY(), c.xs[row], c.ys[row]) : 0;
+            hits.add(new NearbyShopEngine.Hit(c.ids[row], distance));
+        }
+        return hits;
+    }
+
+    // 排序方式在循环外转成整数，避免每一行都比较一次字符串
+    private static int sortMode(String sortBy) {
+        if (SORT_SOLD.equals(sortBy)) {
+            return BY_SOLD;
+        }
+        if (SORT_PRICE.equals(sortBy)) {
+            return BY_PRICE;
+        }
+        if (SORT_DISTANCE.equals(sortBy)) {
+            return BY_DISTANCE;
+        }
+        return BY_SCORE;
+    }
+
+    // 经纬度 -> 球面上的单位向量
+    private static double[] unitVector(double x, double y) {
+        double lon = Math.toRadians(x), lat = Math.toRadians(y);
+        double cosLat = Math.cos(lat);
+        return new double[]{cosLat * Math.cos(lon), cosLat * Math.sin(lon), Math.sin(lat)};
+    }
+
+    private int areaCode(String area) {
+        String a = area == null ? "" : area.trim();
+        Integer code = areaCodes.get(a);
+        if (code == null) {
+            code = areaCodes.size();
+            areaCodes.put(a, code);
+        }
+        return code;
+    }
+
+    /**
+     * 营业时间 10:00-22:00 解析成一天中的分钟数，结束时间小于开始时间表示营业到第二天；格式不对时两个都是-1
+     */
+    public static int[] parseOpenHours(String openHours) {
+        int[] range = {NONE, NONE};
+        if (StrUtil.isBlank(openHours)) {
+            return range;
+        }
+        String[] parts = openHours.trim().split("-");
+        if (parts.length != 2) {
+            return range;
+        }
+        int open = minuteOf(parts[0]), close = minuteOf(parts[1]);
+        if (open >= 0 && close >= 0) {
+            range[0] = open;
+            range[1] = close;
+        }
+        return range;
+    }
+
+    private static int minuteOf(String hhmm) {
+        String[] parts = hhmm.trim().split(":");
+        if (parts.length != 2) {
+            return NONE;
+        }
+        try {
+            int h = Integer.parseInt(parts[0]), m = Integer.parseInt(parts[1]);
+            return h >= 0 && h <= 24 && m >= 0 && m < 60 ? h * 60 + m : NONE;
+        } catch (NumberFormatException e) {
+            return NONE;
+        }
+    }
+
+    /**
+     * 一份列存快照
+     */
+    private static final class Columns {
+        private final long[] ids;
+        private final long[] typeIds;
+        private final int[] areas;
+        private final long[] prices;
+        private final int[] scores;
+        private final int[] sold;
+        private final double[] xs;
+        private final double[] ys;
+        // 经纬度对应的单位向量，按距离排序用
+        private final double[] us;
+        private final double[] vs;
+        private final double[] ws;
+        // 营业开始、结束时间(一天中的分钟数)
+        private final short[] opens;
+        private final short[] closes;
+        // 店铺id -> 行号，只有写线程访问
+        private final LongIntMap rows;
+        private volatile int size;
+
+        private Columns(int capacity) {
+            ids = new long[capacity];
+            typeIds = new long[capacity];
+            areas = new int[capacity];
+            prices = new long[capacity];
+            scores = new int[capacity];
+            sold = new int[capacity];
+            xs = new double[capacity];
+            ys = new double[capacity];
+            us = new double[capacity];
+            vs = new double[capacity];
+            ws = new double[capacity];
+            opens = new short[capacity];
+            closes = new short[capacity];
+            rows = new LongIntMap(capacity);
+        }
+
+        private Columns grow() {
+            Columns next = new Columns(ids.length * 2);
+            System.arraycopy(ids, 0, next.ids, 0, size);
+            System.arraycopy(typeIds, 0, next.typeIds, 0, size);
+            System.arraycopy(areas, 0, next.areas, 0, size);
+            System.arraycopy(prices, 0, next.prices, 0, size);
+            System.arraycopy(scores, 0, next.scores, 0, size);
+            System.arraycopy(sold, 0, next.sold, 0, size);
+            System.arraycopy(xs, 0, next.xs, 0, size);
+            System.arraycopy(ys, 0, next.ys, 0, size);
+            System.arraycopy(us, 0, next.us, 0, size);
+            System.arraycopy(vs, 0, next.vs, 0, size);
+            System.arraycopy(ws, 0, next.ws, 0, size);
+            System.arraycopy(opens, 0, next.opens, 0, size);
+            System.arraycopy(closes, 0, next.closes, 0, size);
+            for (int row = 0; row < size; row++) {
+                next.rows.put(ids[row], row);
+            }
+            next.size = size;
+            return next;
+        }
+
+        private void set(int row, Shop shop, int area) {
+            int[] open = parseOpenHours(shop.getOpenHours());
+            ids[row] = shop.getId();
+            typeIds[row] = shop.getTypeId() == null ? NONE : shop.getTypeId();
+            areas[row] = area;
+            prices[row] = shop.getAvgPrice() == null ? NONE : shop.getAvgPrice();
+            scores[row] = shop.getScore() == null ? 0 : shop.getScore();
+            sold[row] = shop.getSold() == null ? 0 : shop.getSold();
+            xs[row] = shop.getX() == null ? 0 : shop.getX();
+            ys[row] = shop.getY() == null ? 0 : shop.getY();
+            double[] u = unitVector(xs[row], ys[row]);
+            us[row] = u[0];
+            vs[row] = u[1];
+            ws[row] = u[2];
+            opens[row] = (short) open[0];
+            closes[row] = (short) open[1];
+        }
+
+        // 下面每个条件：1的行多的字逐行算出64位掩码再与上去，1的行少的字只检查为1的行；
+        // 比较结果用符号位算出0或1，没有条件跳转，随机数据上不会因为分支预测失败变慢
+
+        private void andEquals(long[] bits, long typeId) {
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                if (word == 0) {
+                    continue;
+                }
+                int base = w << 6;
+                long keep = 0L;
+                if (Long.bitCount(word) > SPARSE_BITS) {
+                    for (int b = 0, end = Math.min(64, size - base); b < end; b++) {
+                        keep |= eqBit(typeIds[base + b], typeId) << b;
+                    }
+                } else {
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int b = Long.numberOfTrailingZeros(rest);
+                        keep |= eqBit(typeIds[base + b], typeId) << b;
+                    }
+                }
+                bits[w] = word & keep;
+            }
+        }
+
+        private void andArea(long[] bits, int area) {
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                if (word == 0) {
+                    continue;
+                }
+                int base = w << 6;
+                long keep = 0L;
+                if (Long.bitCount(word) > SPARSE_BITS) {
+                    for (int b = 0, end = Math.min(64, size - base); b < end; b++) {
+                        keep |= eqBit(areas[base + b], area) << b;
+                    }
+                } else {
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int b = Long.numberOfTrailingZeros(rest);
+                        keep |= eqBit(areas[base + b], area) << b;
+                    }
+                }
+                bits[w] = word & keep;
+            }
+        }
+
+        // 没有均价的行(NONE)不满足任何区间
+        private void andPrice(long[] bits, long min, long max) {
+            long lo = Math.max(min, 0L);
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                if (word == 0) {
+                    continue;
+                }
+                int base = w << 6;
+                long keep = 0L;
+                if (Long.bitCount(word) > SPARSE_BITS) {
+                    for (int b = 0, end = Math.min(64, size - base); b < end; b++) {
+                        keep |= rangeBit(prices[base + b], lo, max) << b;
+                    }
+                } else {
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int b = Long.numberOfTrailingZeros(rest);
+                        keep |= rangeBit(prices[base + b], lo, max) << b;
+                    }
+                }
+                bits[w] = word & keep;
+            }
+        }
+
+        private void andMinScore(long[] bits, int min) {
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                if (word == 0) {
+                    continue;
+                }
+                int base = w << 6;
+                long keep = 0L;
+                if (Long.bitCount(word) > SPARSE_BITS) {
+                    for (int b = 0, end = Math.min(64, size - base); b < end; b++) {
+                        keep |= geBit(scores[base + b], min) << b;
+                    }
+                } else {
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int b = Long.numberOfTrailingZeros(rest);
+                        keep |= geBit(scores[base + b], min) << b;
+                    }
+                }
+                bits[w] = word & keep;
+            }
+        }
+
+        private void andOpen(long[] bits, int minute) {
+            for (int w = 0; w < bits.length; w++) {
+                long word = bits[w];
+                if (word == 0) {
+                    continue;
+                }
+                int base = w << 6;
+                long keep = 0L;
+                if (Long.bitCount(word) > SPARSE_BITS) {
+                    for (int b = 0, end = Math.min(64, size - base); b < end; b++) {
+                        keep |= (isOpen(base + b, minute) ? 1L : 0L) << b;
+                    }
+                } else {
+                    for (long rest = word; rest != 0; rest &= rest - 1) {
+                        int b = Long.numberOfTrailingZeros(rest);
+                        keep |= (isOpen(base + b, minute) ? 1L : 0L) << b;
+                    }
+                }
+                bits[w] = word & keep;
+            }
+        }
+
+        // x == v 时为1
+        private static long eqBit(long x, long v) {
+            long d = x ^ v;
+            return ~(d | -d) >>> 63;
+        }
+
+        // lo <= x <= hi 时为1，lo >= 0
+        private static long rangeBit(long x, long lo, long hi) {
+            long d = x - lo;
+            return ~(d | (hi - lo - d)) >>> 63;
+        }
+
+        // x >= min 时为1
+        private static long geBit(long x, long min) {
+            return ~(x - min) >>> 63;
+        }
+
+        private boolean isOpen(int row, int minute) {
+            int open = opens[row], close = closes[row];
+            return open != NONE && (open <= close
+                    ? minute >= open && minute < close
+                    : minute >= open || minute < close);
+        }
+
+        // 越小越靠前
+        private double sortKey(int row, int sortBy, double[] q) {
+            switch (sortBy) {
+                case BY_SOLD:
+                    return -sold[row];
+                case BY_PRICE:
+                    return prices[row] == NONE ? Double.MAX_VALUE : prices[row];
+                case BY_DISTANCE:
+                    // 点积越大距离越近
+                    return -(q[0] * us[row] + q[1] * vs[row] + q[2] * ws[row]);
+                default:
+                    return -scores[row];
+            }
+        }
+    }
+
+    /**
+     * 保留排序值最小的k个：大顶堆，堆顶是目前第k小的，新来的比它小才替换；排序值相同时id小的靠前
+     */
+    private static final class TopK {
+        private final double[] keys;
+        private final long[] ids;
+        private final int[] rows;
+        private int size;
+
+        private TopK(int k) {
+            keys = new double[k];
+            ids = new long[k];
+            rows = new int[k];
+        }
+
+        private void offer(double key, long id, int row) {
+            if (size < keys.length) {
+                int i = size++;
+                // 上浮
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (!greater(key, id, keys[parent], ids[parent])) {
+                        break;
+                    }
+                    move(parent, i);
+                    i = parent;
+                }
+                put(i, key, id, row);
+            } else if (greater(keys[0], ids[0], key, id)) {
+                siftDown(0, key, id, row, size);
+            }
+        }
+
+        // 从小到大排好的行号：反复把堆顶换到末尾
+        private int[] sortedRows() {
+            for (int end = size - 1; end > 0; end--) {
+                double key = keys[end];
+                long id = ids[end];
+                int row = rows[end];
+                move(0, end);
+                siftDown(0, key, id, row, end);
+            }
+            return Arrays.copyOf(rows, size);
+        }
+
+        private void siftDown(int i, double key, long id, int row, int n) {
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= n) {
+                    break;
+                }
+                if (child + 1 < n && greater(keys[child + 1], ids[child + 1], keys[child], ids[child])) {
+                    child++;
+                }
+                if (!greater(keys[child], ids[child], key, id)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            put(i, key, id, row);
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            ids[to] = ids[from];
+            rows[to] = rows[from];
+        }
+
+        private void put(int i, double key, long id, int row) {
+            keys[i] = key;
+            ids[i] = id;
+            rows[i] = row;
+        }
+
+        private static boolean greater(double k1, long id1, double k2, long id2) {
+            return k1 > k2 || (k1 == k2 && id1 > id2);
+        }
+    }
+
+    /**
+     * 店铺id -> 行号的开放寻址哈希表，避免一百万个Long、Integer对象
+     */
+    private static final class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private boolean[] used;
+        private int size;
+
+        private LongIntMap(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        // 不存在返回-1
+        private int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+            }
+            return -1;
+        }
+
+        private void put(long key, int value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (used[i] && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (!used[i]) {
+                used[i] = true;
+                keys[i] = key;
+                size++;
+            }
+            values[i] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldUsed[i]) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.SHOP_RANK_KEY;
+
+/**
+ * 按类型划分的店铺排行榜：每个类型、每个排序字段一个ZSET shop:rank:{field}:{typeId}，member是店铺id
+ * 1.增量：订单落库后累加销量，发布探店笔记后累加评论数，修改店铺时更新评分、类型变了就换榜
+ * 2.全量：定时任务流式扫描整张表写入临时key，扫完后RENAME替换，修正增量的误差；这次没有店铺的类型，旧的排行榜删除
+ * 3.分页：ZREVRANGE 取一页店铺id；分数相同时redis按member字符串的字典序倒序排列(例如"9"排在"10"前面)，
+ *   不是按id数值倒序，和排行榜不存在时数据库排序(ORDER BY field DESC, id DESC)的并列顺序可能不同
+ */
+@Component
+public class ShopLeaderboard {
+
+    public static final String SOLD = "sold";
+    public static final String SCORE = "score";
+    public static final String COMMENTS = "comments";
+    public static final List<String> FIELDS = Collections.unmodifiableList(Arrays.asList(SOLD, SCORE, COMMENTS));
+
+    private static final String BUILDING_SUFFIX = ":building";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ShopMapper shopMapper;
+
+    // 店铺id -> 类型id，累加计数时用来定位排行榜，没有的从数据库查
+    private final ConcurrentHashMap<Long, Long> shopTypes = new ConcurrentHashMap<>();
+
+    // 全量重建时写过的临时key
+    private final Set<String> buildingKeys = ConcurrentHashMap.newKeySet();
+
+    public ShopLeaderboard(StringRedisTemplate stringRedisTemplate, ShopMapper shopMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.shopMapper = shopMapper;
+    }
+
+    public static boolean supports(String field) {
+        return FIELDS.contains(field);
+    }
+
+    /**
+     * 排行榜是否存在，不存在(还没有全量构建过)时调用方退化为数据库排序
+     */
+    public boolean exists(long typeId, String field) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(key(field, typeId)));
+    }
+
+    /**
+     * 第 from ~ end-1 名的店铺id
+     */
+    public List<Long> page(long typeId, String field, int from, int end) {
+        Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(key(field, typeId), from, end - 1);
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(members.size());
+        for (String member : members) {
+            ids.add(Long.valueOf(member));
+        }
+        return ids;
+    }
+
+    /**
+     * 累加一个店铺的计数
+     */
+    public void incr(Long shopId, String field, long delta) {
+        Long typeId = typeOf(shopId);
+        if (typeId == null) {
+            return;
+        }
+        stringRedisTemplate.opsForZSet().incrementScore(key(field, typeId), shopId.toString(), delta);
+    }
+
+    /**
+     * 新增或修改店铺后写入各个排行榜，类型变了先从旧类型的排行榜中移除
+     * @param shop 合并后的完整数据，没有值的字段不写
+     * @param oldTypeId 修改前的类型，新增时为null
+     */
+    public void upsert(Shop shop, Long oldTypeId) {
+        if (shop.getTypeId() == null) {
+            return;
+        }
+        String member = shop.getId().toString();
+        shopTypes.put(shop.getId(), shop.getTypeId());
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            boolean moved = oldTypeId != null && !oldTypeId.equals(shop.getTypeId());
+            for (String field : FIELDS) {
+                if (moved) {
+                    conn.zRem(key(field, oldTypeId), member);
+                }
+                Integer value = value(shop, field);
+                if (value != null) {
+                    conn.zAdd(key(field, shop.getTypeId()), value, member);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 批量加入新店铺
+     */
+    public void addAll(List<Shop> shops) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Shop shop : shops) {
+                if (shop.getTypeId() == null) {
+                    continue;
+                }
+                shopTypes.put(shop.getId(), shop.getTypeId());
+                for (String field : FIELDS) {
+                    Integer value = value(shop, field);
+                    conn.zAdd(key(field, shop.getTypeId()), value == null ? 0 : value, shop.getId().toString());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 全量重建：写入一批店铺到临时key
+     */
+    public void stage(List<Shop> shops) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Shop shop : shops) {
+                if (shop.getTypeId() == null) {
+                    continue;
+                }
+                shopTypes.put(shop.getId(), shop.getTypeId());
+                for (String field : FIELDS) {
+                    String key = key(field, shop.getTypeId()) + BUILDING_SUFFIX;
+                    buildingKeys.add(key);
+                    Integer value = value(shop, field);
+                    conn.zAdd(key, value == null ? 0 : value, shop.getId().toString());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 全量重建：扫描完成，临时key替换正式的排行榜，这次没有写入的排行榜(类型下已经没有店铺)删除
+     */
+    public void commit() {
+        List<String> keys = new ArrayList<>(buildingKeys);
+        buildingKeys.clear();
+        // 1.找出这次没有重建的正式排行榜
+        Set<String> rebuilt = new HashSet<>(keys.size() * 2);
+        for (String key : keys) {
+            rebuilt.add(key.substring(0, key.length() - BUILDING_SUFFIX.length()));
+        }
+        List<String> stale = new ArrayList<>();
+        for (String key : liveKeys()) {
+            if (!rebuilt.contains(key)) {
+                stale.add(key);
+            }
+        }
+        // 2.替换和删除一起走pipeline
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (String key : keys) {
+                conn.rename(key, key.substring(0, key.length() - BUILDING_SUFFIX.length()));
+            }
+            if (!stale.isEmpty()) {
+                conn.del(stale.toArray(new String[0]));
+            }
+            return null;
+        });
+    }
+
+    // SCAN 出所有正式的排行榜，跳过临时key
+    private List<String> liveKeys() {
+        ScanOptions options = ScanOptions.scanOptions().match(SHOP_RANK_KEY + "*").count(1000).build();
+        return stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    String key = new String(cursor.next(), StandardCharsets.UTF_8);
+                    if (!key.endsWith(BUILDING_SUFFIX)) {
+                        keys.add(key);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("扫描排行榜失败", e);
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * 全量重建失败，丢弃临时key
+     */
+    public void abort() {
+        List<String> keys = new ArrayList<>(buildingKeys);
+        buildingKeys.clear();
+        if (!keys.isEmpty()) {
+            stringRedisTemplate.delete(keys);
+        }
+    }
+
+    private Long typeOf(Long shopId) {
+        Long typeId = shopTypes.get(shopId);
+        if (typeId != null) {
+            return typeId;
+        }
+        Shop shop = shopMapper.selectOne(new QueryWrapper<Shop>().select("id", "type_id").eq("id", shopId));
+        if (shop == null || shop.getTypeId() == null) {
+            return null;
+        }
+        shopTypes.put(shopId, shop.getTypeId());
+        return shop.getTypeId();
+    }
+
+    private static Integer value(Shop shop, String field) {
+        switch (field) {
+            case SOLD:
+                return shop.getSold();
+            case SCORE:
+                return shop.getScore();
+            case COMMENTS:
+                return shop.getComments();
+            default:
+                throw new IllegalArgumentException("不支持的排序字段：" + field);
+        }
+    }
+
+    private static String key(String field, long typeId) {
+        return SHOP_RANK_KEY + field + ":" + typeId;
+    }
+}
@@ -0,0 +1,363 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 店铺名称和商圈的内存倒排索引，替代 LIKE '%name%' 的全表扫描
+ * 1.分词：名称和商圈统一小写、去空白后切成单字和相邻两字(bigram)，单字用来支持只输入了一个字的查询
+ * 2.倒排表：每个词对应一串递增的店铺id，存成 差值 + varint 编码的字节数组，一个id通常只占1~2个字节
+ * 3.查询：取查询词的所有bigram，从最短的倒排表开始求交集，再回到原文判断匹配程度
+ * 4.排序：匹配程度(名称完全一致 > 名称前缀 > 名称包含 > 商圈包含 > 只是字都出现了) > 评分 > id，
+ *   用大小为一页的堆取前k个，不对全部匹配结果排序(没有关键字时匹配全部店铺)
+ * 5.更新：整体构建完成后一次性替换；单个店铺的新增、修改只重新编码涉及到的倒排表
+ */
+@Component
+public class ShopNameIndex {
+
+    public static final int EXACT = 4;
+    public static final int PREFIX = 3;
+    public static final int NAME_CONTAINS = 2;
+    public static final int AREA_CONTAINS = 1;
+    public static final int GRAMS_ONLY = 0;
+
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    // 按排序规则排好的匹配结果
+    private static final Comparator<Match> ORDER = Comparator.comparingInt(Match::getQuality).reversed()
+            .thenComparing(Comparator.comparingInt(Match::getScore).reversed())
+            .thenComparingLong(Match::getId);
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * 索引是否已经构建完成
+     */
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    public int size() {
+        Snapshot s = snapshot;
+        return s == null ? 0 : s.docs.size();
+    }
+
+    /**
+     * 用全部店铺重新构建索引，构建期间查询继续使用旧索引
+     */
+    public void build(Collection<Shop> shops) {
+        Map<String, List<Long>> lists = new HashMap<>();
+        Map<Long, Doc> docs = new ConcurrentHashMap<>(shops.size() * 2);
+        for (Shop shop : shops) {
+            Doc doc = Doc.of(shop);
+            docs.put(shop.getId(), doc);
+            for (String gram : doc.grams()) {
+                lists.computeIfAbsent(gram, k -> new ArrayList<>()).add(shop.getId());
+            }
+        }
+        Map<String, byte[]> postings = new ConcurrentHashMap<>(lists.size() * 2);
+        lists.forEach((gram, ids) -> {
+            long[] sorted = ids.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+            postings.put(gram, encode(sorted));
+        });
+        snapshot = new Snapshot(postings, docs);
+    }
+
+    /**
+     * 新增或更新一个店铺，只重新编码名称、商圈变化涉及到的倒排表
+     */
+    public synchronized void upsert(Shop shop) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            // 还没构建完成，构建时会从数据库读到这个店铺
+            return;
+        }
+        Doc doc = Doc.of(shop);
+        Doc old = s.docs.put(shop.getId(), doc);
+        Set<String> oldGrams = old == null ? new LinkedHashSet<>() : old.grams();
+        Set<String> newGrams = doc.grams();
+        for (String gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                update(s, gram, shop.getId(), false);
+            }
+        }
+        for (String gram : newGrams) {
+            if (!oldGrams.contains(gram)) {
+                update(s, gram, shop.getId(), true);
+            }
+        }
+    }
+
+    /**
+     * 按匹配程度、评分排序后的第 from ~ from+limit-1 个匹配结果
+     */
+    public List<Match> search(String query, int from, int limit) {
+        List<Match> top = top(query, null, from + limit);
+        return from >= top.size() ? new ArrayList<>() : new ArrayList<>(top.subList(from, top.size()));
+    }
+
+    /**
+     * 排在cursor之后的limit个匹配结果，cursor为null时从头开始
+     */
+    public List<Match> searchAfter(String query, Match cursor, int limit) {
+        return top(query, cursor, limit);
+    }
+
+    // 排在cursor之后的前k个：堆顶是目前留下的k个中排在最后的，新来的排在它前面才替换，最后只排序这k个
+    private List<Match> top(String query, Match cursor, int k) {
+        Snapshot s = snapshot;
+        if (s == null || k <= 0) {
+            return new ArrayList<>();
+        }
+        String q = normalize(query);
+        PriorityQueue<Match> heap = new PriorityQueue<>(k, ORDER.reversed());
+        if (q.isEmpty()) {
+            // 没有关键字，全部按评分排序
+            s.docs.forEach((id, doc) -> offer(heap, new Match(id, GRAMS_ONLY, doc.score), cursor, k));
+        } else {
+            for (long id : candidates(s, q)) {
+                Doc doc = s.docs.get(id);
+                if (doc != null) {
+                    offer(heap, new Match(id, doc.quality(q), doc.score), cursor, k);
+                }
+            }
+        }
+        List<Match> matches = new ArrayList<>(heap);
+        matches.sort(ORDER);
+        return matches;
+    }
+
+    private static void offer(PriorityQueue<Match> heap, Match match, Match cursor, int k) {
+        if (cursor != null && ORDER.compare(match, cursor) <= 0) {
+            return;
+        }
+        if (heap.size() < k) {
+            heap.add(match);
+        } else if (ORDER.compare(match, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(match);
+        }
+    }
+
+    // 所有bigram(查询只有一个字时用单字)都出现过的店铺
+    private static long[] candidates(Snapshot s, String q) {
+        Set<String> grams = q.length() == 1 ? new LinkedHashSet<>(Arrays.asList(q)) : bigrams(q);
+        // 从最短的倒排表开始求交集
+        List<byte[]> lists = new ArrayList<>(grams.size());
+        for (String gram : grams) {
+            byte[] list = s.postings.get(gram);
+            if (list == null) {
+                return new long[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.length));
+        long[] result = decode(lists.get(0));
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+        return result;
+    }
+
+    private static void update(Snapshot s, String gram, long id, boolean add) {
+        byte[] list = s.postings.get(gram);
+        long[] ids = list == null ? new long[0] : decode(list);
+        int i = Arrays.binarySearch(ids, id);
+        if (add && i < 0) {
+            int at = -i - 1;
+            long[] next = new long[ids.length + 1];
+            System.arraycopy(ids, 0, next, 0, at);
+            next[at] = id;
+            System.arraycopy(ids, at, next, at + 1, ids.length - at);
+            s.postings.put(gram, encode(next));
+        } else if (!add && i >= 0) {
+            if (ids.length == 1) {
+                s.postings.remove(gram);
+                return;
+            }
+            long[] next = new long[ids.length - 1];
+            System.arraycopy(ids, 0, next, 0, i);
+            System.arraycopy(ids, i + 1, next, i, ids.length - i - 1);
+            s.postings.put(gram, encode(next));
+        }
+    }
+
+    // ------------------------ 倒排表编码：差值 + varint ------------------------
+
+    static byte[] encode(long[] sortedIds) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(sortedIds.length * 2 + 5);
+        writeVarLong(out, sortedIds.length);
+        long prev = 0L;
+        for (long id : sortedIds) {
+            writeVarLong(out, id - prev);
+            prev = id;
+        }
+        return out.toByteArray();
+    }
+
+    static long[] decode(byte[] bytes) {
+        int[] pos = {0};
+        long[] ids = new long[(int) readVarLong(bytes, pos)];
+        long prev = 0L;
+        for (int i = 0; i < ids.length; i++) {
+            prev += readVarLong(bytes, pos);
+            ids[i] = prev;
+        }
+        return ids;
+    }
+
+    // 边解码边和已排序的ids求交集，不需要把整个倒排表解出来
+    private static long[] intersect(long[] ids, byte[] bytes) {
+        int[] pos = {0};
+        int n = (int) readVarLong(bytes, pos);
+        long[] result = new long[Math.min(ids.length, n)];
+        int size = 0, i = 0;
+        long cur = 0L;
+        for (int read = 0; read < n && i < ids.length; read++) {
+            cur += readVarLong(bytes, pos);
+            while (i < ids.length && ids[i] < cur) {
+                i++;
+            }
+            if (i < ids.length && ids[i] == cur) {
+                result[size++] = cur;
+                i++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] pos) {
+        long value = 0L;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    // ------------------------ 分词 ------------------------
+
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    private static Set<String> bigrams(String text) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 1 < text.length(); i++) {
+            grams.add(text.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static final class Snapshot {
+        private final Map<String, byte[]> postings;
+        private final Map<Long, Doc> docs;
+
+        private Snapshot(Map<String, byte[]> postings, Map<Long, Doc> docs) {
+            this.postings = postings;
+            this.docs = docs;
+        }
+    }
+
+    private static final class Doc {
+        private final String name;
+        private final String area;
+        private final int score;
+
+        private Doc(String name, String area, int score) {
+            this.name = name;
+            this.area = area;
+            this.score = score;
+        }
+
+        private static Doc of(Shop shop) {
+            return new Doc(normalize(shop.getName()), normalize(shop.getArea()),
+                    shop.getScore() == null ? 0 : shop.getScore());
+        }
+
+        // 单字 + bigram，名称和商圈之间用分隔符隔开，bigram不会跨字段
+        private Set<String> grams() {
+            Set<String> grams = new LinkedHashSet<>();
+            String text = name + FIELD_SEPARATOR + area;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == FIELD_SEPARATOR) {
+                    continue;
+                }
+                grams.add(String.valueOf(c));
+                if (i + 1 < text.length() && text.charAt(i + 1) != FIELD_SEPARATOR) {
+                    grams.add(text.substring(i, i + 2));
+                }
+            }
+            return grams;
+        }
+
+        private int quality(String q) {
+            if (name.equals(q)) {
+                return EXACT;
+            }
+            if (name.startsWith(q)) {
+                return PREFIX;
+            }
+            if (name.contains(q)) {
+                return NAME_CONTAINS;
+            }
+            if (area.contains(q)) {
+                return AREA_CONTAINS;
+            }
+            return GRAMS_ONLY;
+        }
+    }
+
+    /**
+     * 一条匹配结果，也用作翻页游标
+     */
+    public static final class Match {
+        private final long id;
+        private final int quality;
+        private final int score;
+
+        public Match(long id, int quality, int score) {
+            this.id = id;
+            this.quality = quality;
+            this.score = score;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        public int getScore() {
+            return score;
+        }
+    }
+}
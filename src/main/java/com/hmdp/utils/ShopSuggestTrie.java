@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.extra.pinyin.PinyinUtil;
+import com.hmdp.dto.ShopSuggestDTO;
+import com.hmdp.entity.Shop;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 店铺名称联想：店铺名称和名称的拼音首字母(例如 "茶餐厅" 和 "cct")建成一棵前缀树，每个节点预先算好前N个店铺
+ * 1.店铺先按 销量、评分 倒序编号，编号越小排名越靠前，节点的前N个就是子树里最小的N个编号
+ * 2.构建好的树压平成几个基本类型数组：子节点按字符排序后连续存放，查询时逐字二分查找，到达节点后直接返回它的前N个
+ * 3.重建在后台构建一棵新树，完成后替换引用，查询不需要加锁也不会暂停
+ */
+@Component
+public class ShopSuggestTrie {
+
+    // 每个节点保留的候选数
+    public static final int TOP_N = 10;
+
+    private volatile Trie trie;
+
+    public boolean isReady() {
+        return trie != null;
+    }
+
+    /**
+     * 用全部店铺重新构建，构建期间查询继续使用旧树
+     */
+    public void build(List<Shop> shops) {
+        // 1.按 销量、评分 倒序编号
+        List<Shop> ranked = new ArrayList<>(shops);
+        ranked.sort(Comparator.comparing((Shop s) -> s.getSold() == null ? 0 : s.getSold()).reversed()
+                .thenComparing(Comparator.comparing((Shop s) -> s.getScore() == null ? 0 : s.getScore()).reversed())
+                .thenComparing(Shop::getId));
+        long[] ids = new long[ranked.size()];
+        String[] names = new String[ranked.size()];
+        // 2.名称和拼音首字母都插入前缀树
+        Node root = new Node();
+        for (int doc = 0; doc < ranked.size(); doc++) {
+            Shop shop = ranked.get(doc);
+            ids[doc] = shop.getId();
+            names[doc] = shop.getName();
+            String name = normalize(shop.getName());
+            if (name.isEmpty()) {
+                continue;
+            }
+            insert(root, name, doc);
+            String initials = normalize(PinyinUtil.getFirstLetter(name, ""));
+            if (!initials.equals(name)) {
+                insert(root, initials, doc);
+            }
+        }
+        // 3.压平成数组后替换
+        trie = Trie.flatten(root, ids, names);
+    }
+
+    /**
+     * 前缀联想，最多返回limit个，limit限制在 1 ~ TOP_N
+     */
+    public List<ShopSuggestDTO> suggest(String prefix, int limit) {
+        Trie t = trie;
+        String p = normalize(prefix);
+        if (t == null || p.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return t.suggest(p, Math.max(1, Math.min(limit, TOP_N)));
+    }
+
+    private static void insert(Node root, String key, int doc) {
+        Node node = root;
+        node.offer(doc);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.children.computeIfAbsent(key.charAt(i), c -> new Node());
+            node.offer(doc);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : StrUtil.cleanBlank(text).toLowerCase();
+    }
+
+    // 构建用的节点，构建完成后丢弃
+    private static final class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private int[] top = new int[0];
+
+        // 编号是按排名递增插入的，所以只要没满就直接追加；同一个店铺的名称和拼音可能经过同一个节点，去重
+        private void offer(int doc) {
+            if (top.length >= TOP_N || (top.length > 0 && top[top.length - 1] == doc)) {
+                return;
+            }
+            top = Arrays.copyOf(top, top.length + 1);
+            top[top.length - 1] = doc;
+        }
+    }
+
+    /**
+     * 压平后的前缀树，节点按层序编号，根节点是0
+     */
+    private static final class Trie {
+        // 节点的入边字符
+        private final char[] labels;
+        // 子节点的起始编号和个数，子节点按字符排序连续存放
+        private final int[] firstChild;
+        private final int[] childCount;
+        // 节点的前N个店铺：tops[topStart[n] .. topStart[n + 1])
+        private final int[] topStart;
+        private final int[] tops;
+        // 店铺编号 -> id、名称
+        private final long[] ids;
+        private final String[] names;
+
+        private Trie(char[] labels, int[] firstChild, int[] childCount, int[] topStart, int[] tops,
+                     long[] ids, String[] names) {
+            this.labels = labels;
+            this.firstChild = firstChild;
+            this.childCount = childCount;
+            this.topStart = topStart;
+            this.tops = tops;
+            this.ids = ids;
+            this.names = names;
+        }
+
+        private static Trie flatten(Node root, long[] ids, String[] names) {
+            // 1.层序遍历，给节点编号
+            List<Node> nodes = new ArrayList<>();
+            List<Character> nodeLabels = new ArrayList<>();
+            Deque<Node> queue = new ArrayDeque<>();
+            nodes.add(root);
+            nodeLabels.add('\0');
+            queue.add(root);
+            int n = 0;
+            int[] first = new int[16];
+            int[] count = new int[16];
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                if (n >= first.length) {
+                    first = Arrays.copyOf(first, first.length * 2);
+                    count = Arrays.copyOf(count, count.length * 2);
+                }
+                first[n] = nodes.size();
+                count[n] = node.children.size();
+                for (Map.Entry<Character, Node> e : node.children.entrySet()) {
+                    nodes.add(e.getValue());
+                    nodeLabels.add(e.getKey());
+                    queue.add(e.getValue());
+                }
+                n++;
+            }
+            // 2.节点的字符、前N个店铺写入数组
+            char[] labels = new char[n];
+            int[] topStart = new int[n + 1];
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                labels[i] = nodeLabels.get(i);
+                topStart[i] = total;
+                total += nodes.get(i).top.length;
+            }
+            topStart[n] = total;
+            int[] tops = new int[total];
+            for (int i = 0; i < n; i++) {
+                int[] top = nodes.get(i).top;
+                System.arraycopy(top, 0, tops, topStart[i], top.length);
+            }
+            return new Trie(labels, Arrays.copyOf(first, n), Arrays.copyOf(count, n), topStart, tops, ids, names);
+        }
+
+        private List<ShopSuggestDTO> suggest(String prefix, int limit) {
+            // 1.逐字向下走，子节点里二分查找
+            int node = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = child(node, prefix.charAt(i));
+                if (node < 0) {
+                    return Collections.emptyList();
+                }
+            }
+            // 2.直接返回预先算好的前N个
+            int from = topStart[node], to = Math.min(topStart[node + 1], from + limit);
+            List<ShopSuggestDTO> list = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                list.add(new ShopSuggestDTO(ids[tops[i]], names[tops[i]]));
+            }
+            return list;
+        }
+
+        private int child(int node, char c) {
+            int lo = firstChild[node], hi = lo + childCount[node] - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (labels[mid] < c) {
+                    lo = mid + 1;
+                } else if (labels[mid] > c) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.hmdp.utils;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.ShopType;
+import com.hmdp.mapper.ShopTypeMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_TYPE_VERSION_KEY;
+
+/**
+ * 店铺类型的本地快照：整表只有十几行、几乎不变，每个节点在内存里放一份不可变的列表和序列化好的响应，首页查询不访问网络
+ * 1.修改店铺类型后INCR版本key，并通过CacheEvictBus广播，各节点收到后马上重新加载
+ * 2.广播可能丢失，另外定时轮询版本key，版本变了就重新加载；直接改库时手动 INCR shop:type:version 即可
+ * 3.先读版本再读库，加载期间又有修改时版本对不上，下一次轮询会再加载
+ */
+@Slf4j
+@Component
+public class ShopTypeSnapshot {
+
+    private final ShopTypeMapper shopTypeMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final CacheClient cacheClient;
+    private final ObjectMapper objectMapper;
+
+    // 还没有加载成功时为null
+    private volatile Snapshot snapshot;
+
+    public ShopTypeSnapshot(ShopTypeMapper shopTypeMapper, StringRedisTemplate stringRedisTemplate,
+                            CacheClient cacheClient, CacheEvictBus cacheEvictBus, ObjectMapper objectMapper) {
+        this.shopTypeMapper = shopTypeMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.cacheClient = cacheClient;
+        this.objectMapper = objectMapper;
+        cacheEvictBus.subscribe(key -> {
+            if (CACHE_SHOP_TYPE_KEY.equals(key)) {
+                refreshQuietly();
+            }
+        });
+    }
+
+    /**
+     * 当前快照，还没有加载成功时返回null，调用方走redis缓存
+     */
+    public Snapshot current() {
+        return snapshot;
+    }
+
+    /**
+     * 类型是否存在；快照还没有加载成功时无法判断，返回true
+     */
+    public boolean exists(long typeId) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return true;
+        }
+        for (ShopType type : s.types) {
+            if (type.getId() != null && type.getId() == typeId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 店铺类型被修改后调用：推进版本号，删除redis缓存并广播给所有节点
+     */
+    public void bumpVersion() {
+        stringRedisTemplate.opsForValue().increment(SHOP_TYPE_VERSION_KEY);
+        cacheClient.evict(CACHE_SHOP_TYPE_KEY);
+    }
+
+    // 轮询版本key，启动后马上加载第一次
+    @Scheduled(fixedDelayString = "${hmdp.shop-type.poll-ms:5000}")
+    public void poll() {
+        Snapshot s = snapshot;
+        try {
+            if (s == null || s.version != version()) {
+                refresh();
+            }
+        } catch (Exception e) {
+            log.warn("店铺类型快照刷新失败，继续使用旧的快照", e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            log.warn("店铺类型快照刷新失败，等待下一次轮询", e);
+        }
+    }
+
+    private synchronized void refresh() throws Exception {
+        // 1.先读版本，再读库；redis不可用时版本记为-1，恢复后的轮询会再加载一次
+        long version;
+        try {
+            version = version();
+        } catch (Exception e) {
+            log.warn("读取店铺类型版本失败", e);
+            version = -1L;
+        }
+        List<ShopType> types = shopTypeMapper.selectList(new QueryWrapper<ShopType>().orderByAsc("sort"));
+        // 2.和查询接口返回一样的Result，序列化一次
+        Result result = types.isEmpty() ? Result.fail("店铺类型不存在") : Result.ok(types);
+        byte[] body = objectMapper.writeValueAsBytes(result);
+        snapshot = new Snapshot(version, Collections.unmodifiableList(types), body, DigestUtil.md5Hex(body));
+        log.debug("店铺类型快照已加载, version={}, size={}", version, types.size());
+    }
+
+    private long version() {
+        String version = stringRedisTemplate.opsForValue().get(SHOP_TYPE_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    /**
+     * 不可变的快照；列表里的对象是所有请求共享的，调用方不要修改
+     */
+    @Getter
+    public static class Snapshot {
+        private final long version;
+        private final List<ShopType> types;
+        // 序列化好的Result
+        private final byte[] body;
+        private final String etag;
+
+        private Snapshot(long version, List<ShopType> types, byte[] body, String etag) {
+            this.version = version;
+            this.types = types;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
+}
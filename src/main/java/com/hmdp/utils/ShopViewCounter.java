@@ -0,0 +1,132 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.hmdp.utils.RedisConstants.SHOP_PV_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_UV_KEY;
+import static com.hmdp.utils.RedisConstants.SHOP_VIEW_TTL;
+
+/**
+ * 店铺浏览量(PV)和访客数(UV)的计数
+ * 1.请求线程只在内存里累加：PV用LongAdder，UV先在本地按店铺去重，不访问redis
+ * 2.定时把一个周期的增量用一个pipeline写入redis：PV HINCRBY到窗口所在小时的哈希，UV PFADD到窗口所在当天的HyperLogLog；
+ *   小时和日期在窗口创建时确定，而不是写入时，整点、零点前最后一个周期的浏览不会记到下一个桶里
+ * 3.双缓冲：每次写入的是上一个周期换下来的窗口，这时已经没有请求线程还在往里写，交换窗口不会丢计数
+ * 4.写入redis失败的这一批直接丢弃(统计允许少量误差)；由ShopStatsRollupJob汇总到 tb_shop_stats
+ */
+@Slf4j
+@Component
+public class ShopViewCounter {
+
+    public static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHH");
+    public static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 一个周期内最多统计多少个店铺，防止用随机id撑爆内存
+    @Value("${hmdp.shop-view.max-shops:100000}")
+    private int maxShops;
+
+    // 一个周期内每个店铺最多在本地去重多少个访客
+    @Value("${hmdp.shop-view.max-visitors:10000}")
+    private int maxVisitors;
+
+    // 请求线程写入的窗口
+    private volatile Window current = new Window();
+    // 上一个周期换下来的窗口，下一次写入redis
+    private Window retired = new Window();
+
+    public ShopViewCounter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 记录一次浏览
+     * @param visitor 访客标识，为null时只计PV
+     */
+    public void record(Long shopId, String visitor) {
+        Window w = current;
+        LongAdder pv = w.pv.get(shopId);
+        if (pv == null) {
+            if (w.pv.size() >= maxShops) {
+                return;
+            }
+            pv = w.pv.computeIfAbsent(shopId, k -> new LongAdder());
+        }
+        pv.increment();
+        if (visitor != null) {
+            Set<String> visitors = w.uv.computeIfAbsent(shopId, k -> ConcurrentHashMap.newKeySet());
+            if (visitors.size() < maxVisitors) {
+                visitors.add(visitor);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.shop-view.flush-ms:5000}")
+    public synchronized void flush() {
+        // 1.换下当前窗口，写入上一个周期换下来的
+        Window w = retired;
+        retired = current;
+        current = new Window();
+        if (w.pv.isEmpty()) {
+            return;
+        }
+        // 2.一个pipeline写入窗口所在小时的PV和当天的UV
+        String pvKey = SHOP_PV_KEY + w.hour;
+        String day = w.day;
+        long ttlSeconds = TimeUnit.DAYS.toSeconds(SHOP_VIEW_TTL);
+        try {
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (Map.Entry<Long, LongAdder> entry : w.pv.entrySet()) {
+                    conn.hIncrBy(pvKey, entry.getKey().toString(), entry.getValue().sum());
+                }
+                conn.expire(pvKey, ttlSeconds);
+                for (Map.Entry<Long, Set<String>> entry : w.uv.entrySet()) {
+                    String uvKey = SHOP_UV_KEY + day + ":" + entry.getKey();
+                    conn.pfAdd(uvKey, entry.getValue().toArray(new String[0]));
+                    conn.expire(uvKey, ttlSeconds);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("写入店铺浏览统计失败，丢弃{}个店铺的增量", w.pv.size(), e);
+        }
+    }
+
+    // 停机前把两个窗口都写入
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        flush();
+    }
+
+    private static class Window {
+        private final ConcurrentHashMap<Long, LongAdder> pv = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, Set<String>> uv = new ConcurrentHashMap<>();
+        // 窗口开始接收浏览时所在的小时和日期
+        private final String hour;
+        private final String day;
+
+        private Window() {
+            LocalDateTime now = LocalDateTime.now();
+            this.hour = now.format(HOUR_FORMAT);
+            this.day = now.format(DAY_FORMAT);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 统计店铺详情 /shop/{id} 的浏览，排在响应缓存前面，命中响应缓存的请求也会统计
+ * 访客标识用登录token(不查redis解析用户)，没有token的用客户端IP；
+ * IP取 request.getRemoteAddr()，X-Forwarded-For 由Tomcat只对受信任的代理解析(server.forward-headers-strategy)，
+ * 不直接读请求头，客户端伪造请求头刷不了UV
+ */
+public class ShopViewFilter extends OncePerRequestFilter {
+
+    private static final Pattern SHOP_DETAIL = Pattern.compile("/shop/(\\d{1,18})");
+
+    private final ShopViewCounter shopViewCounter;
+
+    public ShopViewFilter(ShopViewCounter shopViewCounter) {
+        this.shopViewCounter = shopViewCounter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        chain.doFilter(request, response);
+        Matcher matcher = SHOP_DETAIL.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        // 304也是一次浏览；不存在的店铺也可能是200，汇总时会过滤掉
+        int status = response.getStatus();
+        if (matcher.matches() && (status == HttpServletResponse.SC_OK || status == HttpServletResponse.SC_NOT_MODIFIED)) {
+            shopViewCounter.record(Long.valueOf(matcher.group(1)), visitor(request));
+        }
+    }
+
+    private static String visitor(HttpServletRequest request) {
+        String token = request.getHeader("authorization");
+        if (StrUtil.isNotBlank(token)) {
+            return "t:" + token;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
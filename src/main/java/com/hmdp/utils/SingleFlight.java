@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（single-flight）：同一JVM内对同一个key的并发加载合并为一次
+ * 第一个到达的线程是leader，负责真正执行加载；其余线程挂在leader的future上，结果一出来就直接拿到，不再轮询
+ */
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader) {
+        // 1.尝试成为leader
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, call);
+        if (inFlight != null) {
+            // 2.已经有加载在进行中，等待它的结果
+            return (T) await(inFlight);
+        }
+        // 3.leader执行加载，并把结果（或异常）交给所有等待者
+        try {
+            T value = loader.get();
+            call.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            // 加载结束后移除，后续的请求重新走缓存
+            calls.remove(key, call);
+        }
+    }
+
+    /**
+     * 当前正在加载中的key数量
+     */
+    public int inFlightCount() {
+        return calls.size();
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // leader抛出的异常原样抛给等待者
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
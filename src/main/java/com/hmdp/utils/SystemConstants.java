@@ -5,4 +5,8 @@ public class SystemConstants {
     public static final String USER_NICK_NAME_PREFIX = "user_";
     public static final int DEFAULT_PAGE_SIZE = 5;
     public static final int MAX_PAGE_SIZE = 10;
+    // 内存排序分页最多翻到的页数，超出的页直接返回空，避免按页码申请过大的top-k
+    public static final int MAX_PAGE = 100;
+    // 附近的店铺搜索半径(米)
+    public static final double NEARBY_SHOP_RADIUS = 5000;
 }
@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 可以带版本号写入缓存的数据
+ * CacheClient写入实现了该接口的对象时，会通过lua脚本比较版本号，拒绝用旧版本覆盖新版本
+ */
+public interface Versioned {
+
+    /**
+     * 数据的版本号，越新越大
+     * 注意不要命名为getXxx，避免被序列化进缓存和接口返回值
+     */
+    long cacheVersion();
+}
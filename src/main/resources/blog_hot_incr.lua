@@ -0,0 +1,14 @@
+-- 热门博文加热度：权重按事件时间相对基准时间指数放大，越新的事件分量越重，等价于旧的热度随时间衰减
+-- 热度ZSET还没有构建(没有基准时间)时不加，由BlogHotDecayJob从数据库构建
+-- KEYS[1] 热门博文ZSET blog:hot
+-- KEYS[2] 热度的基准时间 blog:hot:epoch(秒)
+-- ARGV[1] 博文id
+-- ARGV[2] 权重
+-- ARGV[3] 事件时间(秒)
+-- ARGV[4] 衰减时间常数τ(秒)
+local epoch = tonumber(redis.call('get', KEYS[2]))
+if (not epoch) then
+    return 0
+end
+redis.call('zincrby', KEYS[1], tonumber(ARGV[2]) * math.exp((tonumber(ARGV[3]) - epoch) / tonumber(ARGV[4])), ARGV[1])
+return 1
@@ -0,0 +1,18 @@
+-- 热门博文衰减：把基准时间推进到当前时间，所有分数乘以 e^((旧基准 - 新基准) / τ)，排名不变，分数不会越来越大
+-- 然后只保留热度最高的若干篇
+-- KEYS[1] 热门博文ZSET blog:hot
+-- KEYS[2] 热度的基准时间 blog:hot:epoch(秒)
+-- ARGV[1] 当前时间(秒)
+-- ARGV[2] 衰减时间常数τ(秒)
+-- ARGV[3] 保留的篇数
+local epoch = tonumber(redis.call('get', KEYS[2]))
+if (not epoch) then
+    return 0
+end
+local now = tonumber(ARGV[1])
+if (now > epoch) then
+    redis.call('zunionstore', KEYS[1], 1, KEYS[1], 'WEIGHTS', math.exp((epoch - now) / tonumber(ARGV[2])))
+    redis.call('set', KEYS[2], now)
+end
+redis.call('zremrangebyrank', KEYS[1], 0, -tonumber(ARGV[3]) - 1)
+return 1
@@ -0,0 +1,27 @@
+-- 点赞/取消点赞：同一个用户重复请求只会在两种状态之间切换，不会重复计数；同时更新热门博文的热度
+-- KEYS[1] 博文的点赞集合 blog:liked:{blogId}，member是用户id，score是点赞时间(毫秒)
+-- KEYS[2] 热门博文ZSET blog:hot
+-- KEYS[3] 热度的基准时间 blog:hot:epoch(秒)
+-- ARGV[1] 用户id
+-- ARGV[2] 当前时间(毫秒)
+-- ARGV[3] 博文id
+-- ARGV[4] 一个赞的热度权重
+-- ARGV[5] 衰减时间常数τ(秒)
+-- 返回点赞数的变化：1 点赞，-1 取消点赞
+local epoch = tonumber(redis.call('get', KEYS[3]))
+local likedAt = redis.call('zscore', KEYS[1], ARGV[1])
+if (likedAt) then
+    redis.call('zrem', KEYS[1], ARGV[1])
+    -- 减去当初点赞时加上的热度；已经被裁剪出排行的博文不再加回来，分数不低于0(浮点误差)
+    local score = epoch and tonumber(redis.call('zscore', KEYS[2], ARGV[3]))
+    if (score) then
+        local added = tonumber(ARGV[4]) * math.exp((tonumber(likedAt) / 1000 - epoch) / tonumber(ARGV[5]))
+        redis.call('zadd', KEYS[2], math.max(score - added, 0), ARGV[3])
+    end
+    return -1
+end
+redis.call('zadd', KEYS[1], ARGV[2], ARGV[1])
+if (epoch) then
+    redis.call('zincrby', KEYS[2], tonumber(ARGV[4]) * math.exp((tonumber(ARGV[2]) / 1000 - epoch) / tonumber(ARGV[5])), ARGV[3])
+end
+return 1
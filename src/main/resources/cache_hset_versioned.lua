@@ -0,0 +1,18 @@
+-- 带版本号整体写入哈希缓存：版本key里记录的版本比要写入的新，说明数据已经更新过，拒绝用旧数据覆盖
+-- KEYS[1] 缓存key(哈希)
+-- KEYS[2] 版本key
+-- ARGV[1] 要写入数据的版本号
+-- ARGV[2] 缓存过期时间(毫秒)
+-- ARGV[3] 版本key过期时间(毫秒)
+-- ARGV[4..] field1, value1, field2, value2 ...
+local cur = redis.call('get', KEYS[2])
+if (cur and tonumber(cur) > tonumber(ARGV[1])) then
+    return 0
+end
+redis.call('del', KEYS[1])
+for i = 4, #ARGV, 2 do
+    redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1])
+end
+redis.call('pexpire', KEYS[1], ARGV[2])
+redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[3])
+return 1
@@ -0,0 +1,12 @@
+-- 失效缓存：先把版本key推进到新版本，再删除缓存
+-- 之后任何基于旧数据的重建都会被 cache_set_versioned.lua 拒绝
+-- KEYS[1] 缓存key
+-- KEYS[2] 版本key
+-- ARGV[1] 新版本号
+-- ARGV[2] 版本key过期时间(毫秒)
+local cur = redis.call('get', KEYS[2])
+if ((not cur) or tonumber(cur) < tonumber(ARGV[1])) then
+    redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[2])
+end
+redis.call('del', KEYS[1])
+return 1
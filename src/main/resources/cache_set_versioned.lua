@@ -0,0 +1,18 @@
+-- 带版本号写缓存：版本key里记录的版本比要写入的新，说明数据已经更新过，拒绝用旧数据覆盖
+-- KEYS[1] 缓存key
+-- KEYS[2] 版本key
+-- ARGV[1] 要写入数据的版本号
+-- ARGV[2] 要写入的值
+-- ARGV[3] 缓存过期时间(毫秒)，0表示不过期(逻辑过期)
+-- ARGV[4] 版本key过期时间(毫秒)
+local cur = redis.call('get', KEYS[2])
+if (cur and tonumber(cur) > tonumber(ARGV[1])) then
+    return 0
+end
+if (tonumber(ARGV[3]) > 0) then
+    redis.call('set', KEYS[1], ARGV[2], 'PX', ARGV[3])
+else
+    redis.call('set', KEYS[1], ARGV[2])
+end
+redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[4])
+return 1
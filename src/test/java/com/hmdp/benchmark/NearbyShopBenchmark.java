@@ -0,0 +1,129 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheEvictBus;
+import com.hmdp.utils.GeoGridIndex;
+import com.hmdp.utils.NearbyShopEngine;
+import com.hmdp.utils.RedisGeoEngine;
+import com.hmdp.utils.ShopTypeSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+
+/**
+ * 附近店铺查询：进程内geohash网格索引 vs redis GEO
+ * 店铺随机分布在杭州市区约 30km x 30km 的范围内，查询点也在这个范围内随机取，半径5km取最近的一页
+ * redis部分需要本地有redis：-Dredis.host=127.0.0.1 -Dredis.port=6379，会写入 shop:geo:{typeId} 并在结束后删除
+ * 运行：直接执行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearbyShopBenchmark {
+
+    private static final long TYPE_ID = 9999L;
+    private static final double MIN_X = 120.00, MAX_X = 120.30;
+    private static final double MIN_Y = 30.15, MAX_Y = 30.42;
+    private static final double RADIUS = 5000;
+
+    @Param({"10000", "100000"})
+    private int shopCount;
+
+    @Param({"10", "50"})
+    private int limit;
+
+    private GeoGridIndex index;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private NearbyShopEngine redisEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Shop> shops = new ArrayList<>(shopCount);
+        for (long id = 1; id <= shopCount; id++) {
+            shops.add(new Shop()
+                    .setId(id)
+                    .setTypeId(TYPE_ID)
+                    .setX(MIN_X + random.nextDouble() * (MAX_X - MIN_X))
+                    .setY(MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y)));
+        }
+        // 1.进程内索引
+        index = new GeoGridIndex();
+        for (Shop shop : shops) {
+            index.upsert(shop.getTypeId(), shop.getId(), shop.getX(), shop.getY());
+        }
+        // 2.redis GEO
+        RedisStandaloneConfiguration config = new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"), Integer.getInteger("redis.port", 6379));
+        connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        stringRedisTemplate.delete(SHOP_GEO_KEY + TYPE_ID);
+        // 类型快照没有加载时不过滤类型
+        CacheEvictBus cacheEvictBus = new CacheEvictBus(stringRedisTemplate, new RedisMessageListenerContainer());
+        ShopTypeSnapshot shopTypeSnapshot = new ShopTypeSnapshot(null, stringRedisTemplate, null, cacheEvictBus, null);
+        redisEngine = new RedisGeoEngine(stringRedisTemplate, null, shopTypeSnapshot);
+        for (int i = 0; i < shops.size(); i += 1000) {
+            redisEngine.add(shops.subList(i, Math.min(i + 1000, shops.size())));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stringRedisTemplate.delete(SHOP_GEO_KEY + TYPE_ID);
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public List<NearbyShopEngine.Hit> localWithin() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.within(TYPE_ID, random.nextDouble(MIN_X, MAX_X), random.nextDouble(MIN_Y, MAX_Y), RADIUS, limit);
+    }
+
+    @Benchmark
+    public List<NearbyShopEngine.Hit> localNearest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.nearest(TYPE_ID, random.nextDouble(MIN_X, MAX_X), random.nextDouble(MIN_Y, MAX_Y), limit);
+    }
+
+    @Benchmark
+    public List<NearbyShopEngine.Hit> redisGeoRadius() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return redisEngine.search(TYPE_ID, random.nextDouble(MIN_X, MAX_X), random.nextDouble(MIN_Y, MAX_Y), RADIUS, limit);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NearbyShopBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,114 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.NearbyShopEngine;
+import com.hmdp.utils.ShopCatalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分类页多条件筛选：列式店铺目录上 类型 + 商圈 + 均价区间 + 评分 + 营业中 的组合筛选和排序
+ * 店铺随机分布在20个类型、50个商圈，均价0~500，评分0~50，营业时间随机
+ * 运行：直接执行main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ShopCatalogBenchmark {
+
+    private static final int TYPES = 20;
+    private static final int AREAS = 50;
+
+    @Param({"100000", "1000000"})
+    private int shopCount;
+
+    private ShopCatalog catalog;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Shop> shops = new ArrayList<>(shopCount);
+        for (long id = 1; id <= shopCount; id++) {
+            int open = random.nextInt(12), close = 12 + random.nextInt(12);
+            shops.add(new Shop()
+                    .setId(id)
+                    .setTypeId((long) random.nextInt(TYPES))
+                    .setArea("商圈" + random.nextInt(AREAS))
+                    .setAvgPrice((long) random.nextInt(500))
+                    .setScore(random.nextInt(51))
+                    .setSold(random.nextInt(100000))
+                    .setX(120.0 + random.nextDouble() * 0.3)
+                    .setY(30.15 + random.nextDouble() * 0.27)
+                    .setOpenHours(String.format("%02d:00-%02d:00", open, close)));
+        }
+        catalog = new ShopCatalog();
+        catalog.build(shops);
+    }
+
+    // 只按类型筛选，按销量排序(结果最多，排序最重)
+    @Benchmark
+    public List<NearbyShopEngine.Hit> typeOnly() {
+        ShopFilterDTO filter = new ShopFilterDTO();
+        filter.setTypeId((long) ThreadLocalRandom.current().nextInt(TYPES));
+        filter.setSortBy(ShopCatalog.SORT_SOLD);
+        return catalog.filter(filter, LocalTime.NOON, 0, 10);
+    }
+
+    // 所有条件一起，按评分排序
+    @Benchmark
+    public List<NearbyShopEngine.Hit> allPredicates() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShopFilterDTO filter = new ShopFilterDTO();
+        filter.setTypeId((long) random.nextInt(TYPES));
+        filter.setArea("商圈" + random.nextInt(AREAS));
+        filter.setMinPrice(50L);
+        filter.setMaxPrice(200L);
+        filter.setMinScore(35);
+        filter.setOpenNow(true);
+        return catalog.filter(filter, LocalTime.of(random.nextInt(24), 0), 0, 10);
+    }
+
+    // 价格区间 + 营业中，不限类型，按距离排序
+    @Benchmark
+    public List<NearbyShopEngine.Hit> priceOpenByDistance() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        ShopFilterDTO filter = new ShopFilterDTO();
+        filter.setMinPrice(100L);
+        filter.setMaxPrice(150L);
+        filter.setOpenNow(true);
+        filter.setSortBy(ShopCatalog.SORT_DISTANCE);
+        filter.setX(random.nextDouble(120.0, 120.3));
+        filter.setY(random.nextDouble(30.15, 30.42));
+        return catalog.filter(filter, LocalTime.of(random.nextInt(24), 0), 0, 10);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ShopCatalogBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
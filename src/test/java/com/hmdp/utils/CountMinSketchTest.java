@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    @Test
+    void estimateNeverUnderCounts() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            String key = "cache:shop:" + (i % 997) % (1 + i % 13);
+            sketch.add(key);
+            counts.merge(key, 1, Integer::sum);
+        }
+
+        counts.forEach((key, count) -> assertTrue(sketch.estimate(key) >= count, key));
+    }
+
+    @Test
+    void estimateIsExactWithoutCollisions() {
+        CountMinSketch sketch = new CountMinSketch(4, 4096);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("hot");
+        }
+        sketch.add("cold");
+
+        assertEquals(100, sketch.estimate("hot"));
+        assertEquals(1, sketch.estimate("cold"));
+        assertEquals(0, sketch.estimate("missing"));
+    }
+
+    @Test
+    void clearResetsCounts() {
+        CountMinSketch sketch = new CountMinSketch(4, 64);
+        sketch.add("a");
+        sketch.add("b");
+        sketch.clear();
+
+        assertEquals(0, sketch.estimate("a"));
+        assertEquals(0, sketch.estimate("b"));
+    }
+}
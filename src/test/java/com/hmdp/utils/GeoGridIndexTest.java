@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoGridIndexTest {
+
+    private static final double X = 120.15;
+    private static final double Y = 30.28;
+
+    @Test
+    void withinMatchesBruteForce() {
+        double[][] points = points(500);
+        GeoGridIndex index = index(points);
+
+        for (double radius : new double[]{100, 1000, 5000}) {
+            List<Long> expected = bruteForce(points, X, Y, radius, Integer.MAX_VALUE);
+            assertEquals(expected, ids(index.within(1L, X, Y, radius, Integer.MAX_VALUE)), "radius=" + radius);
+            assertEquals(expected.subList(0, Math.min(10, expected.size())),
+                    ids(index.within(1L, X, Y, radius, 10)), "radius=" + radius);
+        }
+    }
+
+    @Test
+    void nearestMatchesBruteForce() {
+        double[][] points = points(500);
+        GeoGridIndex index = index(points);
+
+        for (int k : new int[]{1, 10, 100}) {
+            assertEquals(bruteForce(points, X, Y, Double.MAX_VALUE, k), ids(index.nearest(1L, X, Y, k)), "k=" + k);
+        }
+    }
+
+    @Test
+    void nearestLargerThanSizeReturnsAll() {
+        GeoGridIndex index = index(points(20));
+
+        assertEquals(20, index.nearest(1L, X, Y, 1000).size());
+        assertEquals(20, index.nearest(1L, X, Y, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void nonPositiveLimitReturnsEmpty() {
+        GeoGridIndex index = index(points(20));
+
+        assertTrue(index.within(1L, X, Y, 10000, 0).isEmpty());
+        assertTrue(index.nearest(1L, X, Y, 0).isEmpty());
+        assertTrue(index.nearest(1L, X, Y, -1).isEmpty());
+        assertTrue(index.nearest(2L, X, Y, 10).isEmpty());
+    }
+
+    @Test
+    void upsertMovesBetweenTypes() {
+        GeoGridIndex index = new GeoGridIndex();
+        index.upsert(1L, 7L, X, Y);
+        index.upsert(2L, 7L, X, Y);
+
+        assertEquals(0, index.size(1L));
+        assertEquals(1, index.size(2L));
+
+        index.remove(2L, 7L);
+        assertEquals(0, index.size(2L));
+    }
+
+    // 以(X, Y)为中心约10公里范围内随机分布的点，第i个点的id是i+1
+    private static double[][] points(int n) {
+        Random random = new Random(42);
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = new double[]{X + (random.nextDouble() - 0.5) * 0.2, Y + (random.nextDouble() - 0.5) * 0.2};
+        }
+        return points;
+    }
+
+    private static GeoGridIndex index(double[][] points) {
+        GeoGridIndex index = new GeoGridIndex();
+        for (int i = 0; i < points.length; i++) {
+            index.upsert(1L, i + 1, points[i][0], points[i][1]);
+        }
+        return index;
+    }
+
+    private static List<Long> bruteForce(double[][] points, double x, double y, double radius, int limit) {
+        List<double[]> hits = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            double d = GeoGridIndex.distance(x, y, points[i][0], points[i][1]);
+            if (d <= radius) {
+                hits.add(new double[]{d, i + 1});
+            }
+        }
+        return hits.stream()
+                .sorted(Comparator.comparingDouble((double[] h) -> h[0]).thenComparingDouble(h -> h[1]))
+                .limit(limit)
+                .map(h -> (long) h[1])
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<NearbyShopEngine.Hit> hits) {
+        return hits.stream().map(NearbyShopEngine.Hit::getId).collect(Collectors.toList());
+    }
+}
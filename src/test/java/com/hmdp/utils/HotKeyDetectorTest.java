@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class HotKeyDetectorTest {
+
+    // 只测本地计数，不连接redis
+    private static HotKeyDetector detector() {
+        HotKeyDetector detector = new HotKeyDetector(null);
+        ReflectionTestUtils.setField(detector, "sampleRate", 1.0);
+        ReflectionTestUtils.setField(detector, "topK", 20);
+        ReflectionTestUtils.setField(detector, "threshold", 500L);
+        return detector;
+    }
+
+    @Test
+    void localCountScalesBySampleRate() {
+        HotKeyDetector detector = detector();
+        for (int i = 0; i < 30; i++) {
+            detector.record("cache:shop:1");
+        }
+
+        assertEquals(30, detector.localCount("cache:shop:1"));
+        assertEquals(0, detector.localCount("cache:shop:2"));
+    }
+
+    @Test
+    void recordDoesNotPromoteWithoutGlobalCount() {
+        HotKeyDetector detector = detector();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(detector.record("cache:shop:1"));
+        }
+
+        assertFalse(detector.isHot("cache:shop:1"));
+    }
+
+    @Test
+    void zeroSampleRateRecordsNothing() {
+        HotKeyDetector detector = detector();
+        ReflectionTestUtils.setField(detector, "sampleRate", 0.0);
+        for (int i = 0; i < 100; i++) {
+            detector.record("cache:shop:1");
+        }
+
+        assertEquals(0, detector.localCount("cache:shop:1"));
+    }
+}
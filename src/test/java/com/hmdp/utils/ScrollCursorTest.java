@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScrollCursorTest {
+
+    @Test
+    void encodeThenDecode() {
+        String cursor = ScrollCursor.encode(1700000000000L, 42L);
+
+        assertArrayEquals(new long[]{1700000000000L, 42L}, ScrollCursor.decodeLongs(cursor, 2));
+        assertArrayEquals(new String[]{"1700000000000", "42"}, ScrollCursor.decode(cursor));
+    }
+
+    @Test
+    void blankCursorMeansFirstPage() {
+        assertNull(ScrollCursor.decodeLongs(null, 2));
+        assertNull(ScrollCursor.decodeLongs("", 2));
+        assertNull(ScrollCursor.decode(" "));
+    }
+
+    @Test
+    void invalidCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ScrollCursor.decodeLongs(ScrollCursor.encode(1L, 2L, 3L), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> ScrollCursor.decodeLongs(ScrollCursor.encode(1L), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> ScrollCursor.decodeLongs(ScrollCursor.encode("a", 2L), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> ScrollCursor.decodeLongs("not a cursor!", 2));
+    }
+}
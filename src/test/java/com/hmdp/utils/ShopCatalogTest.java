@@ -0,0 +1,161 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopFilterDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShopCatalogTest {
+
+    private static final LocalTime NOON = LocalTime.of(12, 0);
+
+    // 行数刚好落在64的倍数前后，检查位图最后一个字的掩码
+    @Test
+    void filterMatchesEveryRowAroundWordBoundary() {
+        for (int n : new int[]{1, 63, 64, 65, 127, 128, 130}) {
+            ShopCatalog catalog = new ShopCatalog();
+            catalog.build(shops(n));
+
+            List<NearbyShopEngine.Hit> hits = catalog.filter(filter(1L, ShopCatalog.SORT_SOLD), NOON, 0, n + 10);
+
+            assertEquals(n, hits.size(), "n=" + n);
+            assertEquals(n, hits.stream().map(NearbyShopEngine.Hit::getId).distinct().count(), "n=" + n);
+        }
+    }
+
+    @Test
+    void filterSortsBySoldThenId() {
+        List<Shop> shops = shops(130);
+        ShopCatalog catalog = new ShopCatalog();
+        catalog.build(shops);
+
+        List<Long> expected = shops.stream()
+                .sorted(Comparator.comparing((Shop s) -> s.getSold()).reversed().thenComparing(Shop::getId))
+                .map(Shop::getId)
+                .collect(Collectors.toList());
+        List<Long> actual = ids(catalog.filter(filter(1L, ShopCatalog.SORT_SOLD), NOON, 0, 130));
+
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void pagesConcatenateToFullResult() {
+        ShopCatalog catalog = new ShopCatalog();
+        catalog.build(shops(130));
+        ShopFilterDTO filter = filter(1L, ShopCatalog.SORT_SCORE);
+        List<Long> all = ids(catalog.filter(filter, NOON, 0, 130));
+
+        List<Long> paged = new ArrayList<>();
+        for (int from = 0; from < 130; from += 7) {
+            paged.addAll(ids(catalog.filter(filter, NOON, from, 7)));
+        }
+
+        assertEquals(all, paged);
+    }
+
+    @Test
+    void filterOutOfRangeReturnsEmpty() {
+        ShopCatalog catalog = new ShopCatalog();
+        catalog.build(shops(65));
+        ShopFilterDTO filter = filter(1L, ShopCatalog.SORT_SOLD);
+
+        assertTrue(catalog.filter(filter, NOON, 65, 10).isEmpty());
+        assertTrue(catalog.filter(filter, NOON, -1, 10).isEmpty());
+        assertTrue(catalog.filter(filter, NOON, 0, 0).isEmpty());
+        // from + limit 溢出int时堆的大小仍然不超过总行数
+        assertEquals(5, catalog.filter(filter, NOON, 60, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void filterByTypeAndPrice() {
+        List<Shop> shops = shops(130);
+        shops.stream().filter(s -> s.getId() % 2 == 0).forEach(s -> s.setTypeId(2L));
+        ShopCatalog catalog = new ShopCatalog();
+        catalog.build(shops);
+        ShopFilterDTO filter = filter(2L, ShopCatalog.SORT_PRICE);
+        filter.setMinPrice(50L);
+        filter.setMaxPrice(80L);
+
+        List<NearbyShopEngine.Hit> hits = catalog.filter(filter, NOON, 0, 130);
+
+        // 偶数id是类型2，均价 = id
+        List<Long> expected = new ArrayList<>();
+        for (long id = 50; id <= 80; id += 2) {
+            expected.add(id);
+        }
+        assertEquals(expected, ids(hits));
+    }
+
+    @Test
+    void upsertAppendsBeyondCapacity() {
+        ShopCatalog catalog = new ShopCatalog();
+        catalog.build(shops(1024));
+        catalog.upsert(shop(1025L));
+
+        assertEquals(1025, catalog.size());
+        assertEquals(1025, catalog.filter(new ShopFilterDTO(), NOON, 0, 2000).size());
+    }
+
+    @Test
+    void filterOpenNowCrossesMidnight() {
+        ShopCatalog catalog = new ShopCatalog();
+        List<Shop> shops = new ArrayList<>();
+        shops.add(shop(1L).setOpenHours("09:00-21:00"));
+        shops.add(shop(2L).setOpenHours("18:00-02:00"));
+        catalog.build(shops);
+        ShopFilterDTO filter = new ShopFilterDTO();
+        filter.setOpenNow(true);
+
+        assertEquals(Collections.singletonList(1L), ids(catalog.filter(filter, NOON, 0, 10)));
+        assertEquals(Collections.singletonList(2L), ids(catalog.filter(filter, LocalTime.of(1, 0), 0, 10)));
+    }
+
+    @Test
+    void parseOpenHours() {
+        assertArrayEquals(new int[]{600, 1320}, ShopCatalog.parseOpenHours("10:00-22:00"));
+        assertArrayEquals(new int[]{-1, -1}, ShopCatalog.parseOpenHours("10:00"));
+        assertArrayEquals(new int[]{-1, -1}, ShopCatalog.parseOpenHours("aa:00-22:00"));
+        assertArrayEquals(new int[]{-1, -1}, ShopCatalog.parseOpenHours(null));
+    }
+
+    private static ShopFilterDTO filter(Long typeId, String sortBy) {
+        ShopFilterDTO filter = new ShopFilterDTO();
+        filter.setTypeId(typeId);
+        filter.setSortBy(sortBy);
+        return filter;
+    }
+
+    private static List<Shop> shops(int n) {
+        List<Shop> shops = new ArrayList<>(n);
+        for (long id = 1; id <= n; id++) {
+            shops.add(shop(id));
+        }
+        return shops;
+    }
+
+    private static Shop shop(long id) {
+        return new Shop().setId(id)
+                .setTypeId(1L)
+                .setArea("area" + (id % 3))
+                .setAvgPrice(id)
+                .setScore((int) (id % 50))
+                .setSold((int) (id % 17))
+                .setX(120.0 + id * 0.001)
+                .setY(30.0 + id * 0.001)
+                .setOpenHours("09:00-21:00");
+    }
+
+    private static List<Long> ids(List<NearbyShopEngine.Hit> hits) {
+        return hits.stream().map(NearbyShopEngine.Hit::getId).collect(Collectors.toList());
+    }
+}
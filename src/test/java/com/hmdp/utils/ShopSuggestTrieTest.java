@@ -0,0 +1,68 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.ShopSuggestDTO;
+import com.hmdp.entity.Shop;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShopSuggestTrieTest {
+
+    @Test
+    void suggestByNameAndInitialsRankedBySold() {
+        ShopSuggestTrie trie = new ShopSuggestTrie();
+        trie.build(Arrays.asList(
+                shop(1L, "茶餐厅", 10),
+                shop(2L, "茶颜悦色", 50),
+                shop(3L, "海底捞", 30)));
+
+        assertEquals(Arrays.asList(2L, 1L), ids(trie.suggest("茶", 10)));
+        assertEquals(Arrays.asList(1L), ids(trie.suggest("cct", 10)));
+        assertEquals(Arrays.asList(3L), ids(trie.suggest("HDL", 10)));
+        assertTrue(trie.suggest("火锅", 10).isEmpty());
+    }
+
+    @Test
+    void suggestLimitIsClamped() {
+        ShopSuggestTrie trie = new ShopSuggestTrie();
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            shops.add(shop(id, "奶茶" + id, (int) id));
+        }
+        trie.build(shops);
+
+        assertEquals(1, trie.suggest("奶", 0).size());
+        assertEquals(1, trie.suggest("奶", -5).size());
+        assertEquals(3, trie.suggest("奶", 3).size());
+        assertEquals(ShopSuggestTrie.TOP_N, trie.suggest("奶", 100).size());
+        // 销量最高的排在最前面
+        assertEquals(30L, trie.suggest("奶茶", 1).get(0).getId());
+    }
+
+    @Test
+    void suggestBeforeBuildOrBlankPrefixReturnsEmpty() {
+        ShopSuggestTrie trie = new ShopSuggestTrie();
+        assertFalse(trie.isReady());
+        assertTrue(trie.suggest("茶", 10).isEmpty());
+
+        trie.build(Arrays.asList(shop(1L, "茶餐厅", 10)));
+        assertTrue(trie.isReady());
+        assertTrue(trie.suggest(" ", 10).isEmpty());
+        assertTrue(trie.suggest(null, 10).isEmpty());
+    }
+
+    private static Shop shop(long id, String name, int sold) {
+        return new Shop().setId(id).setName(name).setSold(sold).setScore(40);
+    }
+
+    private static List<Long> ids(List<ShopSuggestDTO> suggestions) {
+        return suggestions.stream().map(ShopSuggestDTO::getId).collect(Collectors.toList());
+    }
+}